@@ -0,0 +1,127 @@
+package com.braur0.discordauth;
+
+import com.google.gson.stream.JsonWriter;
+import org.slf4j.Logger;
+import org.slf4j.helpers.NOPLogger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+
+/**
+ * Shared fixtures for the benchmarks: deterministic links, data files and offline stand-ins for the
+ * Velocity and JDA interfaces.
+ */
+final class Fixtures {
+
+    static final Logger LOGGER = NOPLogger.NOP_LOGGER;
+
+    private Fixtures() {
+    }
+
+    /**
+     * The i-th player of a fixture; the same index always yields the same UUID.
+     */
+    static UUID player(int i) {
+        SplittableRandom random = new SplittableRandom(i);
+        return new UUID(random.nextLong(), random.nextLong());
+    }
+
+    /**
+     * The Discord ID linked to the i-th player of a fixture.
+     */
+    static long discordId(int i) {
+        return 100_000_000_000_000_000L + i;
+    }
+
+    /**
+     * Write a verified.json snapshot with the given number of links.
+     */
+    static Path writeSnapshot(Path directory, int entries) throws IOException {
+        Path file = directory.resolve("verified.json");
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+             JsonWriter json = new JsonWriter(writer)) {
+            json.beginObject();
+            for (int i = 0; i < entries; i++) {
+                json.name(player(i).toString()).value(Long.toString(discordId(i)));
+            }
+            json.endObject();
+        }
+        return file;
+    }
+
+    /**
+     * Open a storage backend over a fresh copy of a fixture with the given number of links.
+     */
+    static VerifiedStorage openStorage(String backend, Path directory, int entries) throws IOException {
+        switch (backend) {
+            case "json":
+                writeSnapshot(directory, entries);
+                return new JsonVerifiedStorage(directory.resolve("verified.json"), LOGGER,
+                        Integer.MAX_VALUE, 60, 10, 16L << 20, false, 0, Metrics.DISABLED);
+            case "h2":
+                VerifiedStorage storage = new H2VerifiedStorage(directory.resolve("verified"), LOGGER, 10_000);
+                Map<UUID, String> batch = new HashMap<>();
+                for (int i = 0; i < entries; i++) {
+                    batch.put(player(i), Long.toString(discordId(i)));
+                    if (batch.size() == 10_000 || i == entries - 1) {
+                        storage.addAll(batch).join();
+                        batch.clear();
+                    }
+                }
+                return storage;
+            default:
+                throw new IllegalArgumentException("Unknown backend " + backend);
+        }
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Implement an interface with a function of method name and arguments. Methods the function answers
+     * with null return null, or zero/false for primitive return types.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T stub(Class<T> type, BiFunction<String, Object[], Object> answer) {
+        return (T) Proxy.newProxyInstance(Fixtures.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type.getSimpleName() + " stub";
+                default:
+                    break;
+            }
+            Object result = answer.apply(method.getName(), args);
+            if (result != null || !method.getReturnType().isPrimitive()) {
+                return result;
+            }
+            // The element of a fresh primitive array is that type's zero value
+            return method.getReturnType() == void.class ? null : Array.get(Array.newInstance(method.getReturnType(), 1), 0);
+        });
+    }
+}
@@ -0,0 +1,92 @@
+package com.braur0.discordauth;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup load and snapshot compaction of verified.json at different sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LoadBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int entries;
+
+    private Path directory;
+    private JsonVerifiedStorage storage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("discordauth-bench");
+        Fixtures.writeSnapshot(directory, entries);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixtures.deleteRecursively(directory);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeStorage() {
+        if (storage != null) {
+            storage.close();
+            storage = null;
+        }
+    }
+
+    @Benchmark
+    public JsonVerifiedStorage load() {
+        storage = open();
+        return storage;
+    }
+
+    /**
+     * Write a snapshot of the loaded dataset; one journal record makes sure the snapshot is not skipped.
+     */
+    @Benchmark
+    public void save(SaveState state) {
+        state.storage.save();
+    }
+
+    @State(Scope.Thread)
+    public static class SaveState {
+        JsonVerifiedStorage storage;
+
+        @Setup(Level.Iteration)
+        public void setUp(LoadBenchmark benchmark) {
+            storage = benchmark.open();
+            storage.add(Fixtures.player(-1), Long.toString(Fixtures.discordId(-1))).join();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            storage.close();
+        }
+    }
+
+    private JsonVerifiedStorage open() {
+        return new JsonVerifiedStorage(directory.resolve("verified.json"), Fixtures.LOGGER,
+                Integer.MAX_VALUE, 60, 0, 16L << 20, false, 0, Metrics.DISABLED);
+    }
+}
@@ -0,0 +1,412 @@
+package com.braur0.discordauth;
+
+import com.velocitypowered.api.event.Continuation;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.connection.PostLoginEvent;
+import com.velocitypowered.api.event.connection.PreLoginEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
+import com.velocitypowered.api.command.CommandManager;
+import com.velocitypowered.api.command.CommandMeta;
+import com.velocitypowered.api.proxy.InboundConnection;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Offline end-to-end load test: runs the whole plugin against a stubbed Velocity proxy and {@link OfflineDiscord},
+ * fires joins at a fixed rate and has a share of the players verify by DM.
+ * <p>
+ * Reports end-to-end verification latency (DM sent until the in-game confirmation), heap and thread growth and
+ * the plugin's own metrics, then checks that exactly the verified players were persisted and that no code or
+ * session outlived its player. A failed check throws, so the run can gate a release:
+ * <pre>
+ * mvn -Pbenchmarks test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.braur0.discordauth.LoadSimulator -Dexec.args="joins=20000 seconds=60 verifyPercent=2"
+ * </pre>
+ * Arguments containing a dot ({@code admission.globalPerMinute=0}) are written to the simulated
+ * {@code config.properties}.
+ */
+public final class LoadSimulator {
+
+    private static final long GUILD_ID = 123456789012345678L;
+    private static final long ROLE_ID = 987654321098765432L;
+
+    /**
+     * One simulated player and what happened to them.
+     */
+    private final class SimPlayer {
+        final UUID id;
+        final String name;
+        final long discordId;
+        final boolean verifies;
+        final InetSocketAddress address;
+        final Player player;
+        volatile boolean online;
+        volatile boolean dmSent;
+        volatile long dmSentAt;
+        volatile boolean verified;
+        volatile boolean kicked;
+
+        SimPlayer(int index, boolean verifies) throws UnknownHostException {
+            this.id = Fixtures.player(index);
+            this.name = "Sim" + index;
+            this.discordId = Fixtures.discordId(index);
+            this.verifies = verifies;
+            // Each player from its own /24, so subnet limits do not merge unrelated players
+            this.address = new InetSocketAddress(InetAddress.getByAddress(
+                    new byte[]{(byte) (11 + (index >>> 16)), (byte) (index >>> 8), (byte) index, 1}), 25565);
+            this.player = Fixtures.stub(Player.class, this::answer);
+        }
+
+        private Object answer(String method, Object[] args) {
+            switch (method) {
+                case "getUniqueId":
+                    return id;
+                case "getUsername":
+                    return name;
+                case "getRemoteAddress":
+                    return address;
+                case "isActive":
+                    return online;
+                case "getCurrentServer":
+                    return Optional.empty();
+                case "sendMessage":
+                    if (args.length > 0 && args[0] instanceof Component) {
+                        received(plain((Component) args[0]));
+                    }
+                    return null;
+                case "disconnect":
+                    kicked = !verified;
+                    leave();
+                    return null;
+                default:
+                    return null;
+            }
+        }
+
+        private void received(String text) {
+            int command = text.indexOf("!verify ");
+            if (command >= 0 && verifies && !dmSent) {
+                String code = text.substring(command + "!verify ".length()).trim();
+                // A real player needs a moment to switch to Discord and paste the code
+                driver.schedule(() -> {
+                    if (online) {
+                        dmSent = true;
+                        dmSentAt = System.nanoTime();
+                        dmsSent.incrementAndGet();
+                        discord.sendDm(discordId, "!verify " + code);
+                    }
+                }, verifyDelayMillis, TimeUnit.MILLISECONDS);
+            } else if (text.contains("verification successful") && dmSent && !verified) {
+                verified = true;
+                latencies.add(System.nanoTime() - dmSentAt);
+            }
+        }
+
+        private void leave() {
+            if (!online) {
+                return;
+            }
+            online = false;
+            onlinePlayers.remove(id);
+            // Velocity fires the disconnect asynchronously, after the connection has closed
+            logins.execute(() -> plugin.onDisconnect(new DisconnectEvent(player, DisconnectEvent.LoginStatus.SUCCESSFUL_LOGIN)));
+        }
+    }
+
+    private final int joins;
+    private final long seconds;
+    private final double verifyPercent;
+    private final long verifyDelayMillis;
+    private final long verifyTimeoutSeconds;
+    private final Path directory;
+
+    private final ScheduledExecutorService driver = Executors.newScheduledThreadPool(2, r -> daemon(r, "Simulator-Driver"));
+    private final ExecutorService logins = Executors.newFixedThreadPool(4, r -> daemon(r, "Simulator-Login"));
+    private final Map<UUID, SimPlayer> onlinePlayers = new ConcurrentHashMap<>();
+    private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong denied = new AtomicLong();
+    private final AtomicLong dmsSent = new AtomicLong();
+    private final AtomicLong failedReplies = new AtomicLong();
+
+    private final OfflineDiscord discord;
+    private final ProxyServer server;
+    private DiscordAuthPlugin plugin;
+    private SimPlayer[] players;
+
+    private LoadSimulator(Map<String, String> options, Map<String, String> config, Path directory) {
+        this.joins = Integer.parseInt(options.getOrDefault("joins", "20000"));
+        this.seconds = Long.parseLong(options.getOrDefault("seconds", "60"));
+        this.verifyPercent = Double.parseDouble(options.getOrDefault("verifyPercent", "2"));
+        this.verifyDelayMillis = Long.parseLong(options.getOrDefault("verifyDelayMillis", "2000"));
+        this.verifyTimeoutSeconds = Long.parseLong(config.getOrDefault("security.verifyTimeoutSeconds", "60"));
+        this.directory = directory;
+        this.discord = new OfflineDiscord(GUILD_ID, ROLE_ID, Long.parseLong(options.getOrDefault("restLatencyMillis", "50")),
+                (userId, reply) -> {
+                    if (reply.startsWith("❌")) {
+                        failedReplies.incrementAndGet();
+                    }
+                });
+        this.server = proxy();
+    }
+
+    private static Thread daemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    // Only what the plugin calls on the proxy: player lookups and registering its command
+    private ProxyServer proxy() {
+        CommandMeta meta = Fixtures.stub(CommandMeta.class, (method, args) -> null);
+        CommandMeta.Builder[] builder = new CommandMeta.Builder[1];
+        builder[0] = Fixtures.stub(CommandMeta.Builder.class, (method, args) -> method.equals("build") ? meta : builder[0]);
+        CommandManager commands = Fixtures.stub(CommandManager.class,
+                (method, args) -> method.equals("metaBuilder") ? builder[0] : null);
+        return Fixtures.stub(ProxyServer.class, (method, args) -> {
+            switch (method) {
+                case "getPlayer":
+                    SimPlayer player = args[0] instanceof UUID ? onlinePlayers.get(args[0]) : null;
+                    return Optional.ofNullable(player != null ? player.player : null);
+                case "getCommandManager":
+                    return commands;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        Map<String, String> config = new LinkedHashMap<>();
+        config.put("discord.token", "offline");
+        config.put("discord.guildId", Long.toString(GUILD_ID));
+        config.put("discord.roleId", Long.toString(ROLE_ID));
+        config.put("discord.adminId", "1");
+        config.put("discord.memberCache", "none");
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            String key = arg.substring(0, split);
+            (key.contains(".") ? config : options).put(key, arg.substring(split + 1));
+        }
+
+        Path directory = Files.createTempDirectory("discordauth-sim");
+        config.putIfAbsent("integration.lom.allowedUsersPath", directory.resolve("allowed-users.txt").toString());
+        try {
+            new LoadSimulator(options, config, directory).run(config, options);
+        } finally {
+            Fixtures.deleteRecursively(directory);
+        }
+    }
+
+    private void run(Map<String, String> config, Map<String, String> options) throws Exception {
+        Properties properties = new Properties();
+        properties.putAll(config);
+        try (OutputStream out = Files.newOutputStream(directory.resolve("config.properties"))) {
+            properties.store(out, "DiscordAuth load simulation");
+        }
+
+        // Decide up front who verifies, so a run is repeatable
+        SplittableRandom random = new SplittableRandom(42);
+        players = new SimPlayer[joins];
+        for (int i = 0; i < joins; i++) {
+            players[i] = new SimPlayer(i, random.nextDouble() * 100 < verifyPercent);
+        }
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        int threadsBefore = threads.getThreadCount();
+
+        plugin = new DiscordAuthPlugin(server, Fixtures.LOGGER, directory, discord);
+        if (!discord.awaitConnected(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("The bot never connected to the offline Discord");
+        }
+        threads.resetPeakThreadCount();
+        AtomicLong peakHeap = new AtomicLong();
+        driver.scheduleAtFixedRate(() -> peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                0, 100, TimeUnit.MILLISECONDS);
+
+        // Fire the joins at an even rate
+        long start = System.nanoTime();
+        long duration = TimeUnit.SECONDS.toNanos(seconds);
+        int fired = 0;
+        while (fired < joins) {
+            long due = Math.min(joins, (System.nanoTime() - start) * joins / Math.max(1, duration) + 1);
+            for (; fired < due; fired++) {
+                SimPlayer player = players[fired];
+                logins.execute(() -> join(player));
+            }
+            Thread.sleep(10);
+        }
+        long fireSeconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+
+        // Wait until every unverified player has verified, timed out or left
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(verifyTimeoutSeconds + 30);
+        while (System.nanoTime() < deadline && onlinePlayers.values().stream().anyMatch(p -> !p.verified)) {
+            Thread.sleep(100);
+        }
+        long threadPeak = threads.getPeakThreadCount();
+
+        // Everyone leaves, then the proxy shuts down
+        for (SimPlayer player : players) {
+            player.leave();
+        }
+        logins.shutdown();
+        logins.awaitTermination(30, TimeUnit.SECONDS);
+        long pendingCodes = gauge("pending_codes");
+        long unverifiedSessions = gauge("unverified_sessions");
+        List<String> metrics = plugin.getMetrics().describe();
+        plugin.onProxyShutdown(new ProxyShutdownEvent());
+        driver.shutdownNow();
+        discord.shutdown();
+
+        System.gc();
+        long heapAfter = memory.getHeapMemoryUsage().getUsed();
+        int threadsAfter = threads.getThreadCount();
+
+        // Every player who saw the confirmation must be linked on disk, and nobody else
+        VerifiedStorage reopened = new JsonVerifiedStorage(directory.resolve("verified.json"), Fixtures.LOGGER,
+                Integer.MAX_VALUE, 60, 10, 16L << 20, false, 0, Metrics.DISABLED);
+        List<String> failures = new ArrayList<>();
+        int verified = 0;
+        int lost = 0;
+        int kicked = 0;
+        for (SimPlayer player : players) {
+            String stored = reopened.getDiscordId(player.id);
+            if (player.verified) {
+                verified++;
+                if (!Long.toString(player.discordId).equals(stored)) {
+                    failures.add(player.name + " verified but is stored as " + stored);
+                }
+            } else if (stored != null) {
+                failures.add(player.name + " never verified but is stored as " + stored);
+            }
+            if (player.dmSent && !player.verified) {
+                lost++;
+            }
+            if (player.kicked) {
+                kicked++;
+            }
+        }
+        reopened.close();
+        if (lost > 0) {
+            failures.add(lost + " player(s) sent a valid code but were never verified");
+        }
+        if (pendingCodes != 0) {
+            failures.add(pendingCodes + " verification code(s) left after every player left");
+        }
+        if (unverifiedSessions != 0) {
+            failures.add(unverifiedSessions + " unverified session(s) left after every player left");
+        }
+
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        String maxP99 = options.get("maxVerifyP99Millis");
+        if (maxP99 != null && sorted.length > 0 && millis(percentile(sorted, 0.99)) > Double.parseDouble(maxP99)) {
+            failures.add("p99 verify latency is above " + maxP99 + " ms");
+        }
+
+        System.out.printf(Locale.ROOT, "Joins: %d in %d s, %d admitted, %d denied at pre-login%n",
+                joins, fireSeconds, admitted.get(), denied.get());
+        System.out.printf(Locale.ROOT, "Verifies: %d DMs sent, %d verified, %d error replies, %d kicked for timeout%n",
+                dmsSent.get(), verified, failedReplies.get(), kicked);
+        if (sorted.length > 0) {
+            System.out.printf(Locale.ROOT, "Verify latency (DM to in-game confirmation): p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                    millis(percentile(sorted, 0.5)), millis(percentile(sorted, 0.99)), millis(sorted[sorted.length - 1]));
+        }
+        System.out.printf(Locale.ROOT, "Heap: %d MB before, %d MB peak, %d MB after (%+d MB)%n",
+                heapBefore >> 20, peakHeap.get() >> 20, heapAfter >> 20, (heapAfter - heapBefore) >> 20);
+        System.out.printf(Locale.ROOT, "Threads: %d before, %d peak, %d after%n", threadsBefore, threadPeak, threadsAfter);
+        System.out.printf(Locale.ROOT, "Offline Discord: %d gateway events, %d REST calls%n", discord.getEvents(), discord.getRestCalls());
+        System.out.println("Plugin metrics:");
+        metrics.forEach(line -> System.out.println("  " + line));
+
+        if (!failures.isEmpty()) {
+            failures.forEach(System.out::println);
+            throw new IllegalStateException(failures.size() + " check(s) failed");
+        }
+        System.out.println("All checks passed.");
+    }
+
+    // PreLoginEvent, then PostLoginEvent if the login was allowed, as Velocity fires them for one connection
+    private void join(SimPlayer player) {
+        InboundConnection connection = Fixtures.stub(InboundConnection.class,
+                (method, args) -> method.equals("getRemoteAddress") ? player.address : null);
+        PreLoginEvent preLogin = new PreLoginEvent(connection, player.name, player.id);
+        plugin.onPreLogin(preLogin);
+        if (!preLogin.getResult().isAllowed()) {
+            denied.incrementAndGet();
+            return;
+        }
+
+        admitted.incrementAndGet();
+        player.online = true;
+        onlinePlayers.put(player.id, player);
+        EventTask task = plugin.onPostLogin(new PostLoginEvent(player.player));
+        if (task != null) {
+            task.execute(Fixtures.stub(Continuation.class, (method, args) -> null));
+        }
+    }
+
+    private long gauge(String name) {
+        for (String line : plugin.getMetrics().describe()) {
+            if (line.startsWith(name + ": ")) {
+                return Long.parseLong(line.substring(name.length() + 2).split(" ")[0]);
+            }
+        }
+        return 0;
+    }
+
+    // The text of a component and its children, which is how the code reaches the player
+    private static String plain(Component component) {
+        StringBuilder text = new StringBuilder();
+        if (component instanceof TextComponent) {
+            text.append(((TextComponent) component).content());
+        }
+        for (Component child : component.children()) {
+            text.append(plain(child));
+        }
+        return text.toString();
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted[Math.min(sorted.length - 1, (int) (quantile * sorted.length))];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
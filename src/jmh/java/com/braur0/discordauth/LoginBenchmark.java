@@ -0,0 +1,144 @@
+package com.braur0.discordauth;
+
+import com.velocitypowered.api.proxy.InboundConnection;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+import net.kyori.adventure.text.Component;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The checks run for every connection in {@code onPreLogin}, the LOM allow-list check in {@code onPostLogin}
+ * and the in-memory part of a {@code !verify}, against stubbed Velocity and JDA objects so nothing touches
+ * the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoginBenchmark {
+
+    private static final int CONNECTIONS = 65536;
+    private static final int ALLOWED_USERS = 100_000;
+    private static final long ROLE_ID = 987654321098765432L;
+    private static final Component VERIFIED = Component.text("✅ Discord verification successful!");
+
+    private IpReputation reputation;
+    private AdmissionController admission;
+    private InboundConnection[] connections;
+
+    private LomAllowList allowList;
+    private String[] usernames;
+
+    private VerificationCodes codes;
+    private String[] pendingCodes;
+    private Member member;
+    private ProxyServer server;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws UnknownHostException {
+        reputation = new IpReputation(65536, false, 3, TimeUnit.HOURS.toMillis(1), TimeUnit.MINUTES.toMillis(5));
+        // Admission is benchmarked with limits high enough that every connection is accepted
+        admission = new AdmissionController(65536, Long.MAX_VALUE / 2, 1, Long.MAX_VALUE / 2, 1,
+                Long.MAX_VALUE / 2, 1, 0);
+
+        // Connections from distinct addresses, one in eight of them blocked
+        long now = System.currentTimeMillis();
+        connections = new InboundConnection[CONNECTIONS];
+        for (int i = 0; i < CONNECTIONS; i++) {
+            InetAddress address = InetAddress.getByAddress(new byte[]{10, (byte) (i >>> 16), (byte) (i >>> 8), (byte) i});
+            InetSocketAddress remote = new InetSocketAddress(address, 25565);
+            connections[i] = Fixtures.stub(InboundConnection.class,
+                    (method, args) -> method.equals("getRemoteAddress") ? remote : null);
+            if ((i & 7) == 0) {
+                reputation.block(reputation.key(address), now + TimeUnit.HOURS.toMillis(1), now);
+            }
+        }
+
+        // A large allow-list with a few prefix patterns; half of the usernames probed are on it
+        List<String> lines = new ArrayList<>(ALLOWED_USERS + 2);
+        for (int i = 0; i < ALLOWED_USERS; i++) {
+            lines.add("Bot_" + i);
+        }
+        lines.add("cam_*");
+        lines.add("event_*");
+        allowList = LomAllowList.of(lines);
+        usernames = new String[CONNECTIONS];
+        for (int i = 0; i < CONNECTIONS; i++) {
+            usernames[i] = (i & 1) == 0 ? "BOT_" + (i * 7 % ALLOWED_USERS) : "Player" + i;
+        }
+
+        codes = new VerificationCodes("23456789ABCDEFGHJKLMNPQRSTUVWXYZ", 8);
+        pendingCodes = new String[10_000];
+        for (int i = 0; i < pendingCodes.length; i++) {
+            pendingCodes[i] = codes.allocate(Fixtures.player(i));
+        }
+
+        Role role = Fixtures.stub(Role.class, (method, args) -> method.equals("getIdLong") ? ROLE_ID : null);
+        Role other = Fixtures.stub(Role.class, (method, args) -> method.equals("getIdLong") ? 1L : null);
+        List<Role> roles = List.of(other, other, role);
+        member = Fixtures.stub(Member.class, (method, args) -> method.equals("getRoles") ? roles : null);
+
+        Player player = Fixtures.stub(Player.class, (method, args) -> null);
+        server = Fixtures.stub(ProxyServer.class,
+                (method, args) -> method.equals("getPlayer") ? Optional.of(player) : null);
+    }
+
+    /**
+     * Same checks as {@code DiscordAuthPlugin.onPreLogin}: block lookup, then admission.
+     */
+    @Benchmark
+    public boolean preLogin() {
+        InetAddress address = connections[next++ & (CONNECTIONS - 1)].getRemoteAddress().getAddress();
+        long addressKey = IpReputation.key(address, false);
+        if (reputation.isBlocked(reputation.key(addressKey), System.currentTimeMillis())) {
+            return false;
+        }
+        return admission.admit(addressKey) == AdmissionController.Result.ACCEPTED;
+    }
+
+    /**
+     * Same check as {@code DiscordAuthPlugin.onPostLogin} for LOM's allowed users.
+     */
+    @Benchmark
+    public boolean lomAllowList() {
+        return allowList.contains(usernames[next++ & (CONNECTIONS - 1)]);
+    }
+
+    /**
+     * Code lookup, role check on the member and the in-game notification of a {@code !verify}.
+     */
+    @Benchmark
+    public boolean verify() {
+        UUID playerId = codes.lookup(pendingCodes[Math.floorMod(next++, pendingCodes.length)]);
+        if (playerId == null || !DiscordService.hasRole(member, ROLE_ID)) {
+            return false;
+        }
+        server.getPlayer(playerId).ifPresent(p -> p.sendMessage(VERIFIED));
+        return true;
+    }
+}
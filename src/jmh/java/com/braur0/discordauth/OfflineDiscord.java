@@ -0,0 +1,220 @@
+package com.braur0.discordauth;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.JDABuilder;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.entities.channel.ChannelType;
+import net.dv8tion.jda.api.entities.channel.unions.MessageChannelUnion;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.hooks.EventListener;
+import net.dv8tion.jda.api.requests.restaction.CacheRestAction;
+import net.dv8tion.jda.api.requests.restaction.CommandListUpdateAction;
+import net.dv8tion.jda.api.requests.restaction.MessageCreateAction;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * In-process stand-in for Discord's gateway and REST API, so the plugin can run without a network.
+ * <p>
+ * Events are delivered to the bot's listener on one thread, as JDA's default event pool does. REST calls
+ * (replies and member lookups) answer after a fixed latency on a scheduler thread. Every Discord user is a
+ * guild member with the required role.
+ */
+final class OfflineDiscord implements DiscordService.Transport {
+
+    private final long guildId;
+    private final long restLatencyMillis;
+    private final ExecutorService gateway = Executors.newSingleThreadExecutor(r -> daemon(r, "Simulator-Gateway"));
+    private final ScheduledExecutorService rest = Executors.newScheduledThreadPool(2, r -> daemon(r, "Simulator-Rest"));
+    private final CountDownLatch connected = new CountDownLatch(1);
+    private final AtomicLong restCalls = new AtomicLong();
+    private final AtomicLong events = new AtomicLong();
+
+    private final Role role;
+    private final Guild guild;
+    private final JDA jda;
+    // Called with the Discord user ID and text of every reply the bot sends
+    private final BiConsumer<Long, String> replies;
+    private volatile EventListener listener;
+
+    OfflineDiscord(long guildId, long roleId, long restLatencyMillis, BiConsumer<Long, String> replies) {
+        this.guildId = guildId;
+        this.restLatencyMillis = restLatencyMillis;
+        this.replies = replies;
+        this.role = Fixtures.stub(Role.class, (method, args) -> method.equals("getIdLong") ? roleId : null);
+        this.guild = Fixtures.stub(Guild.class, this::guild);
+        this.jda = Fixtures.stub(JDA.class, (method, args) -> method.equals("getGuildById") ? guild : null);
+    }
+
+    private static Thread daemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    @Override
+    public JDA connect(JDABuilder builder, EventListener listener) {
+        this.listener = listener;
+        connected.countDown();
+        return jda;
+    }
+
+    boolean awaitConnected(long timeout, TimeUnit unit) throws InterruptedException {
+        return connected.await(timeout, unit);
+    }
+
+    /**
+     * Deliver a DM from the user to the bot, as the gateway would.
+     */
+    void sendDm(long userId, String content) {
+        User user = user(userId);
+        MessageChannelUnion channel = Fixtures.stub(MessageChannelUnion.class, (method, args) -> {
+            switch (method) {
+                case "getType":
+                    return ChannelType.PRIVATE;
+                case "getId":
+                    return Long.toString(userId);
+                case "getIdLong":
+                    return userId;
+                case "sendMessage":
+                    return action(MessageCreateAction.class, () -> {
+                        replies.accept(userId, args[0].toString());
+                        return null;
+                    });
+                default:
+                    return null;
+            }
+        });
+        long messageId = events.incrementAndGet();
+        Message message = Fixtures.stub(Message.class, (method, args) -> {
+            switch (method) {
+                case "getIdLong":
+                    return messageId;
+                case "getContentRaw":
+                    return content;
+                case "getAuthor":
+                    return user;
+                case "getChannel":
+                    return channel;
+                case "getChannelType":
+                    return ChannelType.PRIVATE;
+                case "getJDA":
+                    return jda;
+                default:
+                    return null;
+            }
+        });
+        MessageReceivedEvent event = new MessageReceivedEvent(jda, messageId, message);
+        gateway.execute(() -> listener.onEvent(event));
+    }
+
+    private Object guild(String method, Object[] args) {
+        switch (method) {
+            case "getIdLong":
+                return guildId;
+            case "getId":
+                return Long.toString(guildId);
+            case "getName":
+                return "Simulated guild";
+            case "getRoleById":
+                return role;
+            case "retrieveMemberById":
+                Member member = member(Long.parseLong(args[0].toString()));
+                return action(CacheRestAction.class, () -> member);
+            case "updateCommands":
+                CommandListUpdateAction[] update = new CommandListUpdateAction[1];
+                update[0] = Fixtures.stub(CommandListUpdateAction.class, (name, arguments) -> {
+                    if (name.equals("addCommands")) {
+                        return update[0];
+                    }
+                    return queue(name, arguments, List::of);
+                });
+                return update[0];
+            default:
+                return null;
+        }
+    }
+
+    private User user(long userId) {
+        return Fixtures.stub(User.class, (method, args) -> {
+            switch (method) {
+                case "getIdLong":
+                    return userId;
+                case "getId":
+                    return Long.toString(userId);
+                case "getName":
+                    return "user" + userId;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private Member member(long userId) {
+        User user = user(userId);
+        List<Role> roles = List.of(role);
+        return Fixtures.stub(Member.class, (method, args) -> {
+            switch (method) {
+                case "getIdLong":
+                    return userId;
+                case "getId":
+                    return Long.toString(userId);
+                case "getUser":
+                    return user;
+                case "getRoles":
+                    return roles;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    // A REST action that answers with the result after the configured latency
+    private <T> T action(Class<T> type, Supplier<?> result) {
+        Object[] action = new Object[1];
+        action[0] = Fixtures.stub(type, (method, args) -> method.equals("useCache") ? action[0] : queue(method, args, result));
+        return type.cast(action[0]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object queue(String method, Object[] args, Supplier<?> result) {
+        if (!method.equals("queue")) {
+            return null;
+        }
+        restCalls.incrementAndGet();
+        Consumer<Object> success = args != null && args.length > 0 ? (Consumer<Object>) args[0] : null;
+        rest.schedule(() -> {
+            Object value = result.get();
+            if (success != null) {
+                success.accept(value);
+            }
+        }, restLatencyMillis, TimeUnit.MILLISECONDS);
+        return null;
+    }
+
+    long getRestCalls() {
+        return restCalls.get();
+    }
+
+    long getEvents() {
+        return events.get();
+    }
+
+    void shutdown() {
+        gateway.shutdownNow();
+        rest.shutdownNow();
+    }
+}
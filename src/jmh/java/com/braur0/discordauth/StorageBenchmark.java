@@ -0,0 +1,82 @@
+package com.braur0.discordauth;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups and durable writes against each storage backend with a pre-filled dataset.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StorageBenchmark {
+
+    @Param({"json", "h2"})
+    public String backend;
+
+    @Param({"10000", "100000", "1000000"})
+    public int entries;
+
+    private Path directory;
+    private VerifiedStorage storage;
+    private UUID[] players;
+    private int next;
+    private int added;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("discordauth-bench");
+        storage = Fixtures.openStorage(backend, directory, entries);
+
+        // Looked-up players are spread over the whole dataset
+        players = new UUID[4096];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = Fixtures.player((int) ((long) i * entries / players.length));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        storage.close();
+        Fixtures.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public boolean isVerifiedHit() {
+        return storage.isVerified(players[next++ & (players.length - 1)]);
+    }
+
+    @Benchmark
+    public boolean isVerifiedMiss() {
+        return storage.isVerified(Fixtures.player(-1 - (next++ & 4095)));
+    }
+
+    /**
+     * Link a new player and wait until the change is persisted, as {@code !verify} does before replying.
+     */
+    @Benchmark
+    public void add() {
+        int i = entries + added++;
+        storage.add(Fixtures.player(i), Long.toString(Fixtures.discordId(i))).join();
+    }
+}
@@ -0,0 +1,70 @@
+package com.braur0.discordauth;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Code allocation and lookup with many codes pending; run with {@code -prof gc} for allocation per code.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VerificationCodeBenchmark {
+
+    @Param({"10000"})
+    public int pending;
+
+    @Param({"6"})
+    public int length;
+
+    private VerificationCodes codes;
+    private UUID[] players;
+    private String[] issued;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        codes = new VerificationCodes("23456789ABCDEFGHJKLMNPQRSTUVWXYZ", length);
+        players = new UUID[pending];
+        issued = new String[pending];
+        for (int i = 0; i < pending; i++) {
+            players[i] = Fixtures.player(i);
+            issued[i] = codes.allocate(players[i]);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    /**
+     * Give a pending player a new code, which releases its old one, so the pending count stays constant.
+     */
+    @Benchmark
+    @Threads(4)
+    public String allocate(Cursor cursor) {
+        return codes.allocate(players[Math.floorMod(cursor.next++, pending)]);
+    }
+
+    @Benchmark
+    public UUID lookup(Cursor cursor) {
+        return codes.lookup(issued[Math.floorMod(cursor.next++, pending)]);
+    }
+}
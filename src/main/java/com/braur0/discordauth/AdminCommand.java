@@ -0,0 +1,88 @@
+package com.braur0.discordauth;
+
+import com.velocitypowered.api.command.CommandSource;
+import com.velocitypowered.api.command.SimpleCommand;
+import net.kyori.adventure.text.Component;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * In-proxy admin commands: {@code /discordauth metrics}, {@code /discordauth reload} and
+ * {@code /discordauth history <uuid|discordId|ip>}.
+ */
+public class AdminCommand implements SimpleCommand {
+
+    private static final String PERMISSION = "discordauth.admin";
+    private static final int HISTORY_LIMIT = 20;
+
+    private final Metrics metrics;
+    private final AuditLog audit;
+    private final Runnable reload;
+
+    public AdminCommand(Metrics metrics, AuditLog audit, Runnable reload) {
+        this.metrics = metrics;
+        this.audit = audit;
+        this.reload = reload;
+    }
+
+    @Override
+    public void execute(Invocation invocation) {
+        CommandSource source = invocation.source();
+        String[] args = invocation.arguments();
+
+        if (args.length == 1 && args[0].equalsIgnoreCase("metrics")) {
+            if (!metrics.isEnabled()) {
+                source.sendMessage(Component.text("Metrics are disabled (metrics.enabled=false)."));
+                return;
+            }
+            source.sendMessage(Component.text("DiscordAuth metrics:"));
+            for (String line : metrics.describe()) {
+                source.sendMessage(Component.text("  " + line));
+            }
+            return;
+        }
+
+        if (args.length == 1 && args[0].equalsIgnoreCase("reload")) {
+            reload.run();
+            source.sendMessage(Component.text("Reloading config.properties and the LOM allow-list; see the console for changes."));
+            return;
+        }
+
+        if (args.length == 2 && args[0].equalsIgnoreCase("history")) {
+            if (!audit.isEnabled()) {
+                source.sendMessage(Component.text("The audit log is disabled (audit.enabled=false)."));
+                return;
+            }
+            // Velocity runs commands off the network threads, so reading the log here holds up no player
+            List<String> events;
+            try {
+                events = audit.history(args[1], HISTORY_LIMIT);
+            } catch (IOException e) {
+                source.sendMessage(Component.text("Failed to read the audit log: " + e.getMessage()));
+                return;
+            }
+            if (events.isEmpty()) {
+                source.sendMessage(Component.text("No audit events for " + args[1] + "."));
+                return;
+            }
+            source.sendMessage(Component.text("Last " + events.size() + " audit event(s) for " + args[1] + ":"));
+            for (String event : events) {
+                source.sendMessage(Component.text("  " + event));
+            }
+            return;
+        }
+
+        source.sendMessage(Component.text("Usage: /discordauth <metrics|reload|history <uuid|discordId|ip>>"));
+    }
+
+    @Override
+    public List<String> suggest(Invocation invocation) {
+        return invocation.arguments().length <= 1 ? List.of("metrics", "reload", "history") : List.of();
+    }
+
+    @Override
+    public boolean hasPermission(Invocation invocation) {
+        return invocation.source().hasPermission(PERMISSION);
+    }
+}
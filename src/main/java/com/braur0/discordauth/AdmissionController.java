@@ -0,0 +1,189 @@
+package com.braur0.discordauth;
+
+import java.net.InetAddress;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rate limits incoming connections before they are authenticated.
+ * <p>
+ * A connection is admitted only if its address, its /24 (IPv4) or /64 (IPv6) subnet and the proxy as a
+ * whole each have a token left. All buckets are checked before any token is taken, so a rejected attempt
+ * does not use up its client's burst. Separately, a player who turns out to need verification is admitted
+ * only while fewer than the configured number of players are waiting to verify; verified players are never
+ * counted against that cap.
+ * <p>
+ * Buckets are kept as a theoretical arrival time (GCRA) in a single {@code long}, so taking a token is one
+ * CAS and the fast path neither locks nor allocates. Address and subnet buckets live in fixed-size tables
+ * indexed by hash; addresses that collide share a bucket, which can only make the limit stricter.
+ */
+public final class AdmissionController {
+
+    public enum Result { ACCEPTED, IP, SUBNET, GLOBAL, SESSIONS }
+
+    private final Bucket ipBuckets;
+    private final Bucket subnetBuckets;
+    private final Bucket globalBucket;
+    private final int maxUnverified;
+    private final long startNanos = System.nanoTime();
+
+    // Players that got a code and have not verified, disconnected or timed out yet
+    private final Set<UUID> unverified = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger unverifiedCount = new AtomicInteger();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder[] shed = new LongAdder[Result.values().length];
+
+    /**
+     * Rates are per minute; a rate of 0 disables that bucket, and a {@code maxUnverified} of 0 disables the
+     * session cap.
+     */
+    public AdmissionController(int tableSize, long ipRate, int ipBurst, long subnetRate, int subnetBurst,
+                               long globalRate, int globalBurst, int maxUnverified) {
+        this.ipBuckets = ipRate > 0 ? new Bucket(tableSize, ipRate, ipBurst) : null;
+        this.subnetBuckets = subnetRate > 0 ? new Bucket(tableSize, subnetRate, subnetBurst) : null;
+        this.globalBucket = globalRate > 0 ? new Bucket(1, globalRate, globalBurst) : null;
+        this.maxUnverified = maxUnverified;
+        for (int i = 0; i < shed.length; i++) {
+            shed[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Decide whether a new connection may log in, taking a token from each bucket.
+     *
+     * @param addressKey the key of the connection's address from {@link IpReputation#key(InetAddress, boolean)}
+     */
+    public Result admit(long addressKey) {
+        Result result = check(addressKey);
+        if (result == Result.ACCEPTED) {
+            accepted.increment();
+        } else {
+            shed[result.ordinal()].increment();
+        }
+        return result;
+    }
+
+    private Result check(long addressKey) {
+        long subnetKey = IpReputation.subnetKey(addressKey);
+        long now = System.nanoTime() - startNanos;
+        if (ipBuckets != null && !ipBuckets.hasToken(addressKey, now)) {
+            return Result.IP;
+        }
+        if (subnetBuckets != null && !subnetBuckets.hasToken(subnetKey, now)) {
+            return Result.SUBNET;
+        }
+        if (globalBucket != null && !globalBucket.hasToken(0, now)) {
+            return Result.GLOBAL;
+        }
+
+        // Charged only once every bucket had room; logins racing through the checks together may overdraw
+        // a bucket by one token each, which the next refill absorbs
+        if (ipBuckets != null) {
+            ipBuckets.take(addressKey, now);
+        }
+        if (subnetBuckets != null) {
+            subnetBuckets.take(subnetKey, now);
+        }
+        if (globalBucket != null) {
+            globalBucket.take(0, now);
+        }
+        return Result.ACCEPTED;
+    }
+
+    /**
+     * Count a player as waiting to verify, unless the cap on waiting players is reached.
+     *
+     * @return false if the player is over the cap and should be disconnected
+     */
+    public boolean sessionStarted(UUID playerId) {
+        if (maxUnverified > 0) {
+            while (true) {
+                int count = unverifiedCount.get();
+                if (count >= maxUnverified) {
+                    shed[Result.SESSIONS.ordinal()].increment();
+                    return false;
+                }
+                if (unverifiedCount.compareAndSet(count, count + 1)) {
+                    break;
+                }
+            }
+        } else {
+            unverifiedCount.incrementAndGet();
+        }
+
+        if (!unverified.add(playerId)) {
+            // Already counted
+            unverifiedCount.decrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Stop counting a player as waiting to verify. Safe to call more than once.
+     */
+    public void sessionEnded(UUID playerId) {
+        if (unverified.remove(playerId)) {
+            unverifiedCount.decrementAndGet();
+        }
+    }
+
+    public int getUnverifiedSessions() {
+        return unverifiedCount.get();
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public long getShed(Result reason) {
+        return shed[reason.ordinal()].sum();
+    }
+
+    public long getShedTotal() {
+        long total = 0;
+        for (LongAdder adder : shed) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    /**
+     * A table of token buckets stored as theoretical arrival times, in nanoseconds since {@link #startNanos}.
+     * A bucket admits a request while its arrival time is at most {@code tolerance} ahead of now; the initial
+     * value 0 is a full bucket.
+     */
+    private static final class Bucket {
+        private final AtomicLongArray arrivals;
+        private final int mask;
+        private final long interval;
+        private final long tolerance;
+
+        Bucket(int size, long perMinute, int burst) {
+            int capacity = size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+            this.arrivals = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+            this.interval = Math.max(1, TimeUnit.MINUTES.toNanos(1) / perMinute);
+            this.tolerance = interval * (Math.max(1, burst) - 1);
+        }
+
+        boolean hasToken(long key, long now) {
+            return arrivals.get(IpReputation.mix(key) & mask) - now <= tolerance;
+        }
+
+        void take(long key, long now) {
+            int slot = IpReputation.mix(key) & mask;
+            while (true) {
+                long arrival = arrivals.get(slot);
+                if (arrivals.compareAndSet(slot, arrival, Math.max(arrival, now) + interval)) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.braur0.discordauth;
+
+import org.slf4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Append-only record of verifications, unlinks, kicks and blocks, written as JSON lines to {@code audit.log}.
+ * <p>
+ * Events have a fixed shape (type, time, player, Discord user, address, a time limit) and are stored field by
+ * field in arrays allocated up front, which form a bounded multi-producer ring. Recording an event claims a slot
+ * with one CAS and never blocks or allocates; when the ring is full the event is dropped and counted, so a burst
+ * of logins is never slowed down by the log. A single writer thread drains the ring in batches, formats the
+ * events and appends them to the file, which is rotated by size into {@code audit.log.1}, {@code audit.log.2}
+ * and so on.
+ */
+public class AuditLog {
+
+    public enum Type {
+        // A Discord user linked a player
+        VERIFIED,
+        // A Discord user removed their own link
+        UNLINKED,
+        // The admin removed a link with !delete
+        DELETED,
+        // !reconcile remove dropped a link whose Discord user lost the role or left the guild
+        RECONCILED,
+        // A player was kicked for not verifying in time
+        TIMEOUT_KICK,
+        // An address was blocked after repeated failed verifications
+        IP_BLOCKED,
+        // A Discord user was blocked after repeated invalid codes
+        VERIFY_BLOCKED,
+        // A player skipped verification through LOM's allow-list
+        LOM_BYPASS
+    }
+
+    private static final Type[] TYPES = Type.values();
+    private static final int BATCH_SIZE = 256;
+    private static final long IDLE_PARK_NANOS = 50_000_000L;
+
+    private final boolean enabled;
+    private final Path file;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final Logger logger;
+
+    // Ring slots, one event per index; a slot may be written when its sequence equals the claiming position,
+    // and read when it is one past it
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final byte[] types;
+    private final long[] times;
+    private final long[] playerHigh;
+    private final long[] playerLow;
+    private final long[] discordIds;
+    private final InetAddress[] addresses;
+    private final long[] untils;
+    private final AtomicLong tail = new AtomicLong();
+    // Only touched by the writer thread
+    private long head;
+
+    private final Thread writer;
+    private volatile boolean running = true;
+    private Writer out;
+    private long fileBytes;
+
+    private final Metrics.Counter recorded;
+    private final Metrics.Counter dropped;
+
+    /**
+     * @param capacity ring size, rounded up to a power of two
+     */
+    public AuditLog(boolean enabled, Path file, int capacity, long maxFileBytes, int maxFiles, Logger logger,
+                    Metrics metrics) {
+        this.enabled = enabled;
+        this.file = file;
+        this.maxFileBytes = Math.max(1, maxFileBytes);
+        this.maxFiles = Math.max(1, maxFiles);
+        this.logger = logger;
+
+        int size = enabled ? Integer.highestOneBit(Math.max(2, capacity) - 1) << 1 : 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.types = new byte[size];
+        this.times = new long[size];
+        this.playerHigh = new long[size];
+        this.playerLow = new long[size];
+        this.discordIds = new long[size];
+        this.addresses = new InetAddress[size];
+        this.untils = new long[size];
+
+        this.recorded = metrics.counter("audit_events_total", "Events written to the audit log.");
+        this.dropped = metrics.counter("audit_dropped_total", "Audit events dropped because the ring buffer was full.");
+        metrics.gauge("audit_queue_depth", "Audit events waiting to be written.", () -> tail.get() - head);
+
+        if (enabled) {
+            this.writer = new Thread(this::run, "DiscordAuth-Audit");
+            this.writer.setDaemon(true);
+            this.writer.start();
+        } else {
+            this.writer = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record an event. Never blocks; the event is dropped if the writer has fallen a full ring behind.
+     *
+     * @param playerId  the player, or null
+     * @param discordId the Discord user, or 0
+     * @param address   the player's address, or null
+     * @param until     when a block ends in epoch milliseconds, or 0
+     */
+    public void record(Type type, UUID playerId, long discordId, InetAddress address, long until) {
+        if (!enabled) {
+            return;
+        }
+
+        long position;
+        int slot;
+        while (true) {
+            position = tail.get();
+            slot = (int) position & mask;
+            long available = sequences.get(slot) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (available < 0) {
+                // The slot still holds an event from one lap ago
+                dropped.increment();
+                return;
+            }
+        }
+
+        types[slot] = (byte) type.ordinal();
+        times[slot] = System.currentTimeMillis();
+        playerHigh[slot] = playerId != null ? playerId.getMostSignificantBits() : 0;
+        playerLow[slot] = playerId != null ? playerId.getLeastSignificantBits() : 0;
+        discordIds[slot] = discordId;
+        addresses[slot] = address;
+        untils[slot] = until;
+        // Publishes the fields above to the writer
+        sequences.set(slot, position + 1);
+        if ((position & (mask >> 1)) == 0) {
+            // Wake the writer every half ring, so a burst does not wait out its idle pause
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void run() {
+        try {
+            open();
+        } catch (IOException e) {
+            logger.error("Failed to open the audit log {}; audit events are discarded.", file, e);
+        }
+
+        StringBuilder line = new StringBuilder(256);
+        while (running) {
+            if (drain(line) == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        // Write whatever was recorded before the stop
+        while (drain(line) > 0) {
+            // Keep draining
+        }
+        close();
+    }
+
+    // Write up to one batch of events, returning how many were taken off the ring
+    private int drain(StringBuilder line) {
+        int count = 0;
+        while (count < BATCH_SIZE) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) {
+                break;
+            }
+
+            line.setLength(0);
+            format(slot, line);
+            addresses[slot] = null;
+            sequences.set(slot, head + mask + 1);
+            head++;
+            count++;
+            write(line);
+        }
+
+        if (count > 0) {
+            recorded.add(count);
+            flush();
+        }
+        return count;
+    }
+
+    private void format(int slot, StringBuilder line) {
+        line.append("{\"time\":\"").append(Instant.ofEpochMilli(times[slot]))
+                .append("\",\"event\":\"").append(TYPES[types[slot]].name().toLowerCase(Locale.ROOT)).append('"');
+        if (playerHigh[slot] != 0 || playerLow[slot] != 0) {
+            line.append(",\"player\":\"").append(new UUID(playerHigh[slot], playerLow[slot])).append('"');
+        }
+        if (discordIds[slot] != 0) {
+            line.append(",\"discord\":\"").append(discordIds[slot]).append('"');
+        }
+        if (addresses[slot] != null) {
+            line.append(",\"ip\":\"").append(addresses[slot].getHostAddress()).append('"');
+        }
+        if (untils[slot] != 0) {
+            line.append(",\"until\":\"").append(Instant.ofEpochMilli(untils[slot])).append('"');
+        }
+        line.append("}\n");
+    }
+
+    private void write(StringBuilder line) {
+        if (out == null) {
+            return;
+        }
+        try {
+            if (fileBytes + line.length() > maxFileBytes && fileBytes > 0) {
+                rotate();
+            }
+            out.append(line);
+            fileBytes += line.length();
+        } catch (IOException e) {
+            logger.error("Failed to write the audit log", e);
+        }
+    }
+
+    private void flush() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            logger.error("Failed to write the audit log", e);
+        }
+    }
+
+    private void open() throws IOException {
+        out = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+        fileBytes = Files.size(file);
+    }
+
+    // audit.log becomes audit.log.1, audit.log.1 becomes audit.log.2, and the oldest file is deleted
+    private void rotate() throws IOException {
+        out.close();
+        out = null;
+        Files.deleteIfExists(rotated(maxFiles - 1));
+        for (int i = maxFiles - 2; i >= 0; i--) {
+            Path from = rotated(i);
+            if (Files.exists(from)) {
+                Files.move(from, rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        open();
+    }
+
+    // File i of the log: audit.log for 0, audit.log.i for older files
+    private Path rotated(int index) {
+        return index == 0 ? file : file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void close() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.error("Failed to close the audit log", e);
+        }
+        out = null;
+    }
+
+    /**
+     * The most recent events about a player UUID, Discord user ID or IP address, oldest first.
+     */
+    public List<String> history(String subject, int limit) throws IOException {
+        String needle = needle(subject.trim());
+        ArrayDeque<String> matches = new ArrayDeque<>(limit);
+        for (int i = maxFiles - 1; i >= 0; i--) {
+            try (BufferedReader reader = Files.newBufferedReader(rotated(i), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.contains(needle)) {
+                        if (matches.size() == limit) {
+                            matches.removeFirst();
+                        }
+                        matches.addLast(line);
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                // Not rotated that far yet
+            }
+        }
+        return new ArrayList<>(matches);
+    }
+
+    private static String needle(String subject) {
+        try {
+            return "\"player\":\"" + UUID.fromString(subject) + "\"";
+        } catch (IllegalArgumentException e) {
+            // Not a UUID
+        }
+        if (!subject.isEmpty() && subject.chars().allMatch(Character::isDigit)) {
+            return "\"discord\":\"" + subject + "\"";
+        }
+        return "\"ip\":\"" + subject + "\"";
+    }
+
+    /**
+     * Write the events still in the ring and close the file.
+     */
+    public void stop() {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.braur0.discordauth;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+import org.slf4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Admin bulk jobs: streaming import and export of links, and reconciliation of links
+ * against the holders of the required role. Jobs run one at a time on a background thread.
+ */
+public class BulkOperations {
+
+    // Links persisted per storage write during an import
+    private static final int IMPORT_BATCH_SIZE = 10_000;
+    // Maximum number of user IDs in one gateway member request
+    private static final int MEMBER_PAGE_SIZE = 100;
+    // Stale links listed in the reply of a report-only reconciliation
+    private static final int REPORT_LIMIT = 20;
+
+    private final Cluster cluster;
+    private final AuditLog audit;
+    private final Logger logger;
+    private final VerifiedStorage storage;
+    private final Path dataDirectory;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "DiscordAuth-Bulk");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public BulkOperations(Cluster cluster, AuditLog audit, Logger logger, VerifiedStorage storage, Path dataDirectory) {
+        this.cluster = cluster;
+        this.audit = audit;
+        this.logger = logger;
+        this.storage = storage;
+        this.dataDirectory = dataDirectory.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Import links from a CSV ({@code uuid,discordId} per line) or JSON ({@code {"uuid":"discordId",...}})
+     * file inside the plugin data directory.
+     *
+     * @return false if another job is already running
+     */
+    public boolean importLinks(String fileName, Consumer<String> reply) {
+        return submit(reply, () -> {
+            Path path = resolve(fileName);
+            long start = System.nanoTime();
+            int[] counts = new int[2]; // imported, skipped
+
+            Map<UUID, String> batch = new LinkedHashMap<>();
+            Consumer<Map.Entry<String, String>> sink = link -> {
+                try {
+                    UUID uuid = UUID.fromString(link.getKey().trim());
+                    String discordId = link.getValue().trim();
+                    Long.parseLong(discordId);
+                    batch.put(uuid, discordId);
+                } catch (IllegalArgumentException e) {
+                    counts[1]++;
+                    return;
+                }
+                if (batch.size() >= IMPORT_BATCH_SIZE) {
+                    storage.addAll(batch).join();
+                    counts[0] += batch.size();
+                    batch.clear();
+                }
+            };
+
+            if (isJson(path)) {
+                readJson(path, sink);
+            } else {
+                readCsv(path, sink);
+            }
+            if (!batch.isEmpty()) {
+                storage.addAll(batch).join();
+                counts[0] += batch.size();
+            }
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            String summary = String.format(Locale.ROOT, "Imported %d links from %s (%d skipped) in %.1f s (%.0f links/s).",
+                    counts[0], path.getFileName(), counts[1], seconds, counts[0] / Math.max(seconds, 0.001));
+            logger.info(summary);
+            reply.accept("✅ " + summary);
+        });
+    }
+
+    /**
+     * Export every link to a CSV or JSON file inside the plugin data directory.
+     *
+     * @return false if another job is already running
+     */
+    public boolean exportLinks(String fileName, Consumer<String> reply) {
+        return submit(reply, () -> {
+            Path path = resolve(fileName);
+            long start = System.nanoTime();
+            int[] count = new int[1];
+
+            try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                if (isJson(path)) {
+                    JsonWriter json = new JsonWriter(writer);
+                    json.beginObject();
+                    storage.forEach((uuid, discordId) -> {
+                        try {
+                            json.name(uuid.toString()).value(discordId);
+                            count[0]++;
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                    json.endObject();
+                    json.flush();
+                } else {
+                    writer.write("uuid,discord_id\n");
+                    storage.forEach((uuid, discordId) -> {
+                        try {
+                            writer.write(uuid + "," + discordId + "\n");
+                            count[0]++;
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                }
+            }
+
+            String summary = String.format(Locale.ROOT, "Exported %d links to %s in %.1f s.",
+                    count[0], path.getFileName(), (System.nanoTime() - start) / 1e9);
+            logger.info(summary);
+            reply.accept("✅ " + summary);
+        });
+    }
+
+    /**
+     * Find links whose Discord user left the guild or no longer holds the role, and optionally remove them.
+     * Uses the role-holder index when it is loaded, otherwise pages through the guild members
+     * with gateway member requests of up to 100 IDs each.
+     *
+     * @param roleHolders the loaded role-holder index, or null to query the gateway
+     * @return false if another job is already running
+     */
+    public boolean reconcile(Guild guild, long roleId, RoleHolderIndex roleHolders, boolean remove, Consumer<String> reply) {
+        return submit(reply, () -> {
+            long start = System.nanoTime();
+            // Stale player -> Discord user
+            Map<UUID, Long> stale = new LinkedHashMap<>();
+            long[] stats = new long[4]; // checked, member requests, total request wait (ns), max request wait (ns)
+
+            Map<Long, UUID> page = new LinkedHashMap<>();
+            storage.forEach((uuid, discordId) -> {
+                stats[0]++;
+                long snowflake = Long.parseLong(discordId);
+                if (roleHolders != null) {
+                    if (!roleHolders.contains(snowflake)) stale.put(uuid, snowflake);
+                    return;
+                }
+                page.put(snowflake, uuid);
+                if (page.size() >= MEMBER_PAGE_SIZE) {
+                    checkPage(guild, roleId, page, stale, stats);
+                }
+            });
+            if (!page.isEmpty()) {
+                checkPage(guild, roleId, page, stale, stats);
+            }
+
+            if (remove) {
+                stale.forEach((uuid, snowflake) -> {
+                    storage.remove(uuid);
+                    cluster.publishRevoked(uuid);
+                    audit.record(AuditLog.Type.RECONCILED, uuid, snowflake, null, 0);
+                });
+                storage.flush().join();
+            }
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            StringBuilder summary = new StringBuilder(String.format(Locale.ROOT,
+                    "Reconciliation checked %d links in %.1f s (%.0f links/s): %d without the role, %s.",
+                    stats[0], seconds, stats[0] / Math.max(seconds, 0.001), stale.size(), remove ? "removed" : "not removed"));
+            if (roleHolders != null) {
+                summary.append(" Checked against the role-holder index, no member requests.");
+            } else {
+                summary.append(String.format(Locale.ROOT, " %d member requests, %.0f ms average and %d ms max wait (rate limited).",
+                        stats[1], stats[1] == 0 ? 0.0 : stats[2] / 1e6 / stats[1], TimeUnit.NANOSECONDS.toMillis(stats[3])));
+            }
+            logger.info(summary.toString());
+            if (!remove) {
+                stale.keySet().forEach(uuid -> logger.info("Stale link: player {}", uuid));
+                stale.keySet().stream().limit(REPORT_LIMIT).forEach(uuid -> summary.append("\n").append(uuid));
+                if (stale.size() > REPORT_LIMIT) {
+                    summary.append("\n… full list in the proxy log");
+                }
+            }
+            reply.accept("✅ " + summary);
+        });
+    }
+
+    /**
+     * Look up one page of users and collect the players whose user is gone or lacks the role.
+     */
+    private void checkPage(Guild guild, long roleId, Map<Long, UUID> page, Map<UUID, Long> stale, long[] stats) {
+        long[] ids = page.keySet().stream().mapToLong(Long::longValue).toArray();
+        long requestStart = System.nanoTime();
+        List<Member> members = guild.retrieveMembersByIds(ids).get();
+        long waited = System.nanoTime() - requestStart;
+        stats[1]++;
+        stats[2] += waited;
+        stats[3] = Math.max(stats[3], waited);
+
+        Set<Long> holders = new HashSet<>();
+        for (Member member : members) {
+            for (Role role : member.getRoles()) {
+                if (role.getIdLong() == roleId) {
+                    holders.add(member.getIdLong());
+                    break;
+                }
+            }
+        }
+        page.forEach((snowflake, uuid) -> {
+            if (!holders.contains(snowflake)) stale.put(uuid, snowflake);
+        });
+        page.clear();
+    }
+
+    private boolean submit(Consumer<String> reply, ThrowingRunnable job) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        executor.execute(() -> {
+            try {
+                job.run();
+            } catch (Exception e) {
+                logger.error("Bulk job failed", e);
+                reply.accept("❌ Bulk job failed: " + e.getMessage());
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    private Path resolve(String fileName) throws IOException {
+        Path path = dataDirectory.resolve(fileName).normalize();
+        // Only files inside the plugin folder can be read or written through Discord
+        if (!path.startsWith(dataDirectory)) {
+            throw new IOException("Path must be inside the plugin data directory: " + fileName);
+        }
+        return path;
+    }
+
+    private static boolean isJson(Path path) {
+        return path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".json");
+    }
+
+    private static void readJson(Path path, Consumer<Map.Entry<String, String>> sink) throws IOException {
+        try (JsonReader json = new JsonReader(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+            json.beginObject();
+            while (json.hasNext()) {
+                sink.accept(Map.entry(json.nextName(), json.nextString()));
+            }
+            json.endObject();
+        }
+    }
+
+    private static void readCsv(Path path, Consumer<Map.Entry<String, String>> sink) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#") || line.startsWith("uuid,")) continue;
+                int comma = line.indexOf(',');
+                sink.accept(Map.entry(comma < 0 ? line : line.substring(0, comma), comma < 0 ? "" : line.substring(comma + 1)));
+            }
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
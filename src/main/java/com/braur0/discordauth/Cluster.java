@@ -0,0 +1,235 @@
+package com.braur0.discordauth;
+
+import org.slf4j.Logger;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates the proxies that share a {@link ClusterBackend}.
+ * <p>
+ * Exactly one proxy holds the leader lease and runs the Discord bot. The lease is a key with a time to live
+ * that the leader renews every third of the lease; if it cannot renew before the lease would expire it steps
+ * down, so two proxies never run the bot at once. Verifications, revocations and IP blocks are published on
+ * one channel and handled by every proxy, including the one that published them.
+ * <p>
+ * A standalone proxy runs the same code on an {@link InMemoryClusterBackend}, where it is always the leader.
+ */
+public class Cluster {
+
+    /**
+     * Handles events published by any proxy.
+     */
+    public interface Listener {
+        void onVerified(UUID playerId);
+
+        void onRevoked(UUID playerId);
+
+        void onBlocked(long key, long until);
+    }
+
+    private final ClusterBackend backend;
+    private final String proxyId;
+    private final long leaseMillis;
+    private final Logger logger;
+    private final String leaderKey;
+    private final String botKey;
+    private final String eventChannel;
+    private final ScheduledExecutorService scheduler;
+
+    private Listener listener;
+    private Runnable onElected;
+    private Runnable onDemoted;
+
+    private volatile boolean leader;
+    private long leaseRenewedAt;
+    private volatile boolean localBotReady;
+    private volatile boolean botReady;
+    private volatile CompletableFuture<Void> botReadyFuture = new CompletableFuture<>();
+
+    public Cluster(ClusterBackend backend, String keyPrefix, String proxyId, long leaseMillis, Logger logger) {
+        this.backend = backend;
+        this.proxyId = proxyId;
+        this.leaseMillis = leaseMillis;
+        this.logger = logger;
+        this.leaderKey = keyPrefix + ":leader";
+        this.botKey = keyPrefix + ":bot";
+        this.eventChannel = keyPrefix + ":events";
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "DiscordAuth-Cluster");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Subscribe to cluster events and take part in the leader election. The first election round runs on
+     * the calling thread, so a standalone proxy is the leader when this returns.
+     *
+     * @param onElected  called when this proxy becomes the leader and should start the bot
+     * @param onDemoted  called when this proxy loses the lease and must stop the bot
+     */
+    public void start(Listener listener, Runnable onElected, Runnable onDemoted) {
+        this.listener = listener;
+        this.onElected = onElected;
+        this.onDemoted = onDemoted;
+        backend.subscribe(eventChannel, this::handle, this::pollBotReady);
+
+        tick();
+        long period = Math.max(1, leaseMillis / 3);
+        scheduler.scheduleAtFixedRate(this::tick, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void tick() {
+        long now = System.currentTimeMillis();
+        try {
+            if (leader) {
+                if (backend.compareAndExpire(leaderKey, proxyId, leaseMillis)) {
+                    leaseRenewedAt = now;
+                } else {
+                    demote("the lease was taken over");
+                }
+            } else if (backend.setIfAbsent(leaderKey, proxyId, leaseMillis)) {
+                leader = true;
+                leaseRenewedAt = now;
+                logger.info("Proxy {} is now the cluster leader and runs the Discord bot.", proxyId);
+                onElected.run();
+            }
+
+            if (leader && localBotReady && !backend.compareAndExpire(botKey, proxyId, leaseMillis)) {
+                backend.setIfAbsent(botKey, proxyId, leaseMillis);
+            }
+            pollBotReady();
+        } catch (RuntimeException e) {
+            logger.warn("Cluster backend unavailable: {}", e.getMessage());
+            // Another proxy may take the lease once it expires, so stop the bot if the next round is too late
+            if (leader && now + Math.max(1, leaseMillis / 3) >= leaseRenewedAt + leaseMillis) {
+                demote("the lease could not be renewed");
+            }
+        }
+    }
+
+    private void demote(String reason) {
+        leader = false;
+        logger.warn("Proxy {} is no longer the cluster leader: {}.", proxyId, reason);
+        onDemoted.run();
+    }
+
+    private void pollBotReady() {
+        setBotReady(backend.get(botKey) != null);
+    }
+
+    private void setBotReady(boolean ready) {
+        if (ready && !botReady) {
+            botReady = true;
+            botReadyFuture.complete(null);
+        } else if (!ready && botReady) {
+            botReady = false;
+            botReadyFuture = new CompletableFuture<>();
+        }
+    }
+
+    private void handle(String message) {
+        String[] parts = message.split(" ");
+        switch (parts[0]) {
+            case "verified":
+                listener.onVerified(UUID.fromString(parts[1]));
+                break;
+            case "revoked":
+                listener.onRevoked(UUID.fromString(parts[1]));
+                break;
+            case "blocked":
+                listener.onBlocked(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+                break;
+            case "bot-up":
+                setBotReady(true);
+                break;
+            case "bot-down":
+                // A new leader may already have its bot up; trust the key over the message
+                pollBotReady();
+                break;
+            default:
+                logger.warn("Ignoring unknown cluster message: {}", message);
+        }
+    }
+
+    public boolean isLeader() {
+        return leader;
+    }
+
+    public String getProxyId() {
+        return proxyId;
+    }
+
+    /**
+     * Whether the bot is connected on the leader, which may be another proxy.
+     */
+    public boolean isBotReady() {
+        return botReady;
+    }
+
+    /**
+     * Returns a future that completes once the bot is connected somewhere in the cluster.
+     */
+    public CompletableFuture<Void> whenBotReady() {
+        return botReadyFuture.copy();
+    }
+
+    /**
+     * Called on the leader once its bot is connected.
+     */
+    public void botStarted() {
+        localBotReady = true;
+        if (!backend.compareAndExpire(botKey, proxyId, leaseMillis)) {
+            backend.setIfAbsent(botKey, proxyId, leaseMillis);
+        }
+        backend.publish(eventChannel, "bot-up " + proxyId);
+    }
+
+    /**
+     * Called on the leader when its bot disconnects.
+     */
+    public void botStopped() {
+        if (!localBotReady) {
+            return;
+        }
+        localBotReady = false;
+        try {
+            backend.compareAndDelete(botKey, proxyId);
+            backend.publish(eventChannel, "bot-down " + proxyId);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to announce that the Discord bot stopped: {}", e.getMessage());
+        }
+    }
+
+    public void publishVerified(UUID playerId) {
+        backend.publish(eventChannel, "verified " + playerId);
+    }
+
+    public void publishRevoked(UUID playerId) {
+        backend.publish(eventChannel, "revoked " + playerId);
+    }
+
+    public void publishBlocked(long key, long until) {
+        backend.publish(eventChannel, "blocked " + key + " " + until);
+    }
+
+    /**
+     * Stop taking part in the election and hand the lease over right away if this proxy holds it.
+     */
+    public synchronized void stop() {
+        scheduler.shutdownNow();
+        if (leader) {
+            leader = false;
+            onDemoted.run();
+            try {
+                backend.compareAndDelete(leaderKey, proxyId);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to release the cluster lease: {}", e.getMessage());
+            }
+        }
+    }
+}
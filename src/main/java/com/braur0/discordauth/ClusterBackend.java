@@ -0,0 +1,60 @@
+package com.braur0.discordauth;
+
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * The subset of a Redis-style key/value and pub/sub store that proxies share in cluster mode.
+ * <p>
+ * {@link RedisClusterBackend} talks to a Redis-protocol server; {@link InMemoryClusterBackend} keeps the
+ * same state in-process and is used by a standalone proxy and as a stand-in for tests and simulations.
+ */
+public interface ClusterBackend {
+
+    String get(String key);
+
+    /**
+     * Set the key with a time to live unless it already exists.
+     *
+     * @return true if the key was set
+     */
+    boolean setIfAbsent(String key, String value, long ttlMillis);
+
+    /**
+     * Delete the key if it holds the expected value.
+     */
+    boolean compareAndDelete(String key, String expected);
+
+    /**
+     * Reset the time to live of the key if it holds the expected value.
+     */
+    boolean compareAndExpire(String key, String expected, long ttlMillis);
+
+    String hget(String hash, String field);
+
+    void hset(String hash, Map<String, String> fields);
+
+    /**
+     * Remove a field from the hash and return its previous value, or null if it was absent.
+     */
+    String hremove(String hash, String field);
+
+    /**
+     * Iterate over the fields of the hash without loading all of them at once.
+     */
+    void hscan(String hash, BiConsumer<String, String> consumer);
+
+    long hlen(String hash);
+
+    void publish(String channel, String message);
+
+    /**
+     * Deliver messages published on the channel to the listener until the backend is closed.
+     * Messages published while the subscription is reconnecting are lost; {@code onResubscribe} runs
+     * after every reconnect so the caller can drop state those messages would have invalidated.
+     */
+    void subscribe(String channel, Consumer<String> listener, Runnable onResubscribe);
+
+    void close();
+}
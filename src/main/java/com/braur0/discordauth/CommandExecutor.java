@@ -0,0 +1,155 @@
+package com.braur0.discordauth;
+
+import org.slf4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs Discord commands off JDA's event thread, so one slow command (a disk write, a storage round trip)
+ * does not hold up the DMs behind it.
+ * <p>
+ * Commands of the same Discord user run one after another in the order they arrived; commands of different
+ * users run in parallel. A command that continues asynchronously (after a REST call, say) holds back the
+ * user's next command until it has finished. Three modes are supported:
+ * <ul>
+ *     <li>{@code virtual}: one virtual thread per command (Java 21 and later; falls back to {@code pool})</li>
+ *     <li>{@code pool}: a bounded pool of platform threads; when its queue is full the submitting thread runs
+ *     the command itself, which slows down intake instead of dropping commands</li>
+ *     <li>{@code inline}: on the calling thread, as before</li>
+ * </ul>
+ */
+public class CommandExecutor {
+
+    private static final int QUEUE_CAPACITY = 1000;
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private final Logger logger;
+    private final ExecutorService executor;
+    private final String mode;
+    // Last queued command per user; removed once it has run and nothing was queued behind it
+    private final Map<Long, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    public CommandExecutor(String mode, int poolSize, Logger logger) {
+        this.logger = logger;
+        ExecutorService virtual = mode.equals("virtual") ? newVirtualThreadExecutor() : null;
+        if (virtual != null) {
+            this.executor = virtual;
+            this.mode = "virtual";
+        } else if (mode.equals("virtual") || mode.equals("pool")) {
+            if (mode.equals("virtual")) {
+                logger.warn("Virtual threads need Java 21 or later; running Discord commands on a pool of {} threads instead.", poolSize);
+            }
+            this.executor = newPool(poolSize);
+            this.mode = "pool";
+        } else {
+            this.executor = null;
+            this.mode = "inline";
+        }
+    }
+
+    // Looked up reflectively so the plugin still builds for and runs on Java 17
+    private ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPool(int size) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+            Thread thread = new Thread(r, "DiscordAuth-Command-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * Executor for the asynchronous part of a command started with {@link #executeAsync}. That part is
+     * already ordered by the user's queue, so it must not be submitted through {@link #execute} again.
+     */
+    public Executor getExecutor() {
+        return executor != null ? executor : Runnable::run;
+    }
+
+    /**
+     * Run the command after every command of the same user submitted before it.
+     */
+    public void execute(long userId, Runnable command) {
+        executeAsync(userId, () -> {
+            command.run();
+            return DONE;
+        });
+    }
+
+    /**
+     * Run the command after every command of the same user submitted before it; the user's next command
+     * waits until the stage returned by this one completes.
+     */
+    public void executeAsync(long userId, Supplier<? extends CompletionStage<?>> command) {
+        if (executor == null) {
+            start(command);
+            return;
+        }
+
+        // Queue the command behind the user's previous one, if that has not finished yet
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> previous = tails.put(userId, done);
+        Runnable task = () -> start(command).whenComplete((ignored, error) -> {
+            done.complete(null);
+            tails.remove(userId, done);
+        });
+        if (previous == null) {
+            executor.execute(task);
+        } else {
+            previous.whenComplete((ignored, error) -> executor.execute(task));
+        }
+    }
+
+    // Run the command, turning a failure into a logged error and a completed stage
+    private CompletionStage<?> start(Supplier<? extends CompletionStage<?>> command) {
+        CompletionStage<?> stage;
+        try {
+            stage = command.get();
+        } catch (RuntimeException e) {
+            logger.error("Discord command failed", e);
+            return DONE;
+        }
+        return stage.exceptionally(error -> {
+            logger.error("Discord command failed", error);
+            return null;
+        });
+    }
+
+    /**
+     * Number of users with commands queued or running.
+     */
+    public int getBusyUsers() {
+        return tails.size();
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -4,7 +4,12 @@ import org.slf4j.Logger;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
 import java.io.InputStream;
 import java.io.OutputStream;
 
@@ -29,9 +34,63 @@ public class ConfigManager {
                 properties.setProperty("discord.guildId", "123456789012345678");        // Default guild ID
                 properties.setProperty("discord.roleId", "987654321098765432");         // Default role ID
                 properties.setProperty("discord.adminId", "000000000000000000");        // Default admin ID
+                properties.setProperty("discord.verifyMode", "dm");                      // How players verify: dm, slash or both
+                properties.setProperty("discord.memberCache", "role-holders");           // Member cache: role-holders, lru or none
+                properties.setProperty("discord.memberCacheSize", "1000");               // Members kept by the lru cache mode
+                properties.setProperty("discord.notReadyPolicy", "queue");               // Unverified joins before the bot is ready: queue, allow or deny
+                properties.setProperty("discord.notReadyQueueSeconds", "30");            // Max time a queued join waits for the bot
+                properties.setProperty("discord.restMaxInFlight", "4");                  // REST calls per route handed to Discord at once
+                properties.setProperty("discord.restMaxInFlightTotal", "8");             // REST calls of all routes handed to Discord at once
+                properties.setProperty("discord.restMaxQueued", "1000");                 // REST calls waiting before housekeeping is dropped
+                properties.setProperty("discord.restCongestionMillis", "1000");          // Answer time that marks a route as rate limited
+                properties.setProperty("discord.commandExecutor", "pool");               // Where DM commands run: virtual, pool or inline
+                properties.setProperty("discord.commandPoolSize", "8");                  // Threads running DM commands in pool mode
+                properties.setProperty("discord.eventPoolSize", "0");                    // Threads for JDA events (0 = JDA default)
+                properties.setProperty("discord.callbackPoolSize", "0");                 // Threads for JDA REST callbacks (0 = JDA default)
                 properties.setProperty("security.maxFailures", "3");                     // Default max failures
                 properties.setProperty("security.blockMinutes", "5");                    // Default block time in minutes
+                properties.setProperty("security.verifyTimeoutSeconds", "60");           // Time to verify before being kicked
+                properties.setProperty("security.failureWindowMinutes", "60");           // How long failed verifications are remembered
+                properties.setProperty("security.blockSubnets", "false");                // Count failures and block per /24 (IPv4) or /64 (IPv6)
+                properties.setProperty("security.reputationSize", "65536");              // Max addresses tracked for failures and blocks
+                properties.setProperty("security.codeLength", "8");                      // Characters in a verification code
+                properties.setProperty("security.codeAlphabet", "23456789ABCDEFGHJKLMNPQRSTUVWXYZ"); // Characters codes are made of
+                properties.setProperty("security.maxVerifyAttempts", "5");               // Invalid codes a Discord user may send before being blocked
+                properties.setProperty("security.verifyAttemptBlockMinutes", "15");      // How long a Discord user is blocked from !verify
+                properties.setProperty("admission.ipPerMinute", "10");                   // Logins per minute per address (0 = unlimited)
+                properties.setProperty("admission.ipBurst", "3");                        // Logins an address may make at once
+                properties.setProperty("admission.subnetPerMinute", "60");               // Logins per minute per /24 (IPv4) or /64 (IPv6) (0 = unlimited)
+                properties.setProperty("admission.subnetBurst", "10");                   // Logins a subnet may make at once
+                properties.setProperty("admission.globalPerMinute", "3000");             // Logins per minute across the proxy (0 = unlimited)
+                properties.setProperty("admission.globalBurst", "200");                  // Logins the proxy accepts at once
+                properties.setProperty("admission.maxUnverified", "500");                // Max players waiting to verify (0 = unlimited)
+                properties.setProperty("admission.tableSize", "65536");                  // Rate-limit buckets kept for addresses and subnets
+                properties.setProperty("limbo.enabled", "false");                        // Keep unverified players on a holding server
+                properties.setProperty("limbo.server", "limbo");                         // Name of the holding server in velocity.toml
+                properties.setProperty("limbo.reminderSeconds", "3");                    // Interval of the action-bar reminder on the holding server
+                properties.setProperty("cluster.enabled", "false");                      // Share state with other proxies through Redis
+                properties.setProperty("cluster.redisUri", "redis://127.0.0.1:6379");    // Redis-protocol server shared by the proxies
+                properties.setProperty("cluster.keyPrefix", "discordauth");              // Prefix of every key and channel in Redis
+                properties.setProperty("cluster.proxyId", "");                           // Name of this proxy in the cluster (empty = random)
+                properties.setProperty("cluster.leaseSeconds", "10");                    // How long the bot leader holds its lease without renewing
+                properties.setProperty("cluster.cacheTtlSeconds", "300");                // How long a proxy caches a link
+                properties.setProperty("cluster.negativeCacheTtlSeconds", "30");         // How long a proxy caches that a player is unverified
+                properties.setProperty("audit.enabled", "true");                         // Record verifications, unlinks, kicks and blocks in audit.log
+                properties.setProperty("audit.bufferSize", "8192");                      // Events waiting to be written before new ones are dropped
+                properties.setProperty("audit.maxFileMb", "16");                         // Size at which audit.log is rotated
+                properties.setProperty("audit.maxFiles", "5");                           // audit.log files kept, including the current one
+                properties.setProperty("metrics.enabled", "true");                       // Collect counters and latency histograms
+                properties.setProperty("metrics.httpHost", "127.0.0.1");                 // Address the Prometheus endpoint listens on
+                properties.setProperty("metrics.httpPort", "0");                         // Port of the Prometheus endpoint (0 = disabled)
                 properties.setProperty("integration.lom.allowedUsersPath", "plugins/limited-offline-mode/allowed-users.txt"); // Default path to LOM's user file
+                properties.setProperty("storage.type", "json");                          // Storage backend: json or h2
+                properties.setProperty("storage.cacheSize", "10000");                   // Hot-entry cache size for the h2 backend
+                properties.setProperty("storage.compactThreshold", "10000");             // Journal records before a snapshot is written
+                properties.setProperty("storage.compactIntervalMinutes", "10");          // Periodic snapshot interval in minutes
+                properties.setProperty("storage.writeBehindMillis", "10");               // Group-commit window in ms (0 = write synchronously)
+                properties.setProperty("storage.parallelLoadThresholdMb", "16");         // Snapshot size above which loading uses all cores
+                properties.setProperty("storage.lazyLoad", "false");                     // Accept logins while verified.json is still loading
+                properties.setProperty("storage.lazyLookupMillis", "2000");              // Max wait of a login lookup while verified.json loads
                 try (OutputStream out = Files.newOutputStream(configFile)) {
                     properties.store(out, "DiscordAuth Config");
                 }
@@ -46,6 +105,18 @@ public class ConfigManager {
         }
     }
 
+    // Returns the keys whose values differ between this config and a newer one
+    public Set<String> changedKeys(ConfigManager newer) {
+        Set<String> keys = new TreeSet<>(properties.stringPropertyNames());
+        keys.addAll(newer.properties.stringPropertyNames());
+        keys.removeIf(key -> Objects.equals(trimmed(properties.getProperty(key)), trimmed(newer.properties.getProperty(key))));
+        return keys;
+    }
+
+    private static String trimmed(String value) {
+        return value != null ? value.trim() : null;
+    }
+
     // Returns the Discord bot token
     public String getToken() {
         return properties.getProperty("discord.token");
@@ -82,6 +153,136 @@ public class ConfigManager {
         }
     }
 
+    // Returns the member cache mode: role-holders, lru or none
+    public String getMemberCacheMode() {
+        String mode = properties.getProperty("discord.memberCache", "role-holders").trim().toLowerCase(Locale.ROOT);
+        if (!mode.equals("role-holders") && !mode.equals("lru") && !mode.equals("none")) {
+            logger.warn("Invalid value for 'discord.memberCache' in config.properties. Using default value (role-holders).");
+            return "role-holders";
+        }
+        return mode;
+    }
+
+    // Returns the number of members kept by the lru member cache
+    public int getMemberCacheSize() {
+        try {
+            return Integer.parseInt(properties.getProperty("discord.memberCacheSize", "1000"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'discord.memberCacheSize' in config.properties. Using default value (1000).");
+            return 1000;
+        }
+    }
+
+    // Returns how players verify: dm (!verify by DM), slash (/verify) or both
+    public String getVerifyMode() {
+        String mode = properties.getProperty("discord.verifyMode", "dm").trim().toLowerCase(Locale.ROOT);
+        if (!mode.equals("dm") && !mode.equals("slash") && !mode.equals("both")) {
+            logger.warn("Invalid value for 'discord.verifyMode' in config.properties. Using default value (dm).");
+            return "dm";
+        }
+        return mode;
+    }
+
+    // Returns how unverified joins are handled while the bot is not ready: queue, allow or deny
+    public String getNotReadyPolicy() {
+        String policy = properties.getProperty("discord.notReadyPolicy", "queue").trim().toLowerCase(Locale.ROOT);
+        if (!policy.equals("queue") && !policy.equals("allow") && !policy.equals("deny")) {
+            logger.warn("Invalid value for 'discord.notReadyPolicy' in config.properties. Using default value (queue).");
+            return "queue";
+        }
+        return policy;
+    }
+
+    // Returns how long a queued join waits for the bot, in seconds
+    public long getNotReadyQueueSeconds() {
+        try {
+            return Long.parseLong(properties.getProperty("discord.notReadyQueueSeconds", "30"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'discord.notReadyQueueSeconds' in config.properties. Using default value (30).");
+            return 30;
+        }
+    }
+
+    // Returns how many REST calls per route are handed to Discord at once
+    public int getRestMaxInFlight() {
+        try {
+            return Math.max(1, Integer.parseInt(properties.getProperty("discord.restMaxInFlight", "4")));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'discord.restMaxInFlight' in config.properties. Using default value (4).");
+            return 4;
+        }
+    }
+
+    // Returns how many REST calls of all routes together are handed to Discord at once
+    public int getRestMaxInFlightTotal() {
+        try {
+            return Math.max(1, Integer.parseInt(properties.getProperty("discord.restMaxInFlightTotal", "8")));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'discord.restMaxInFlightTotal' in config.properties. Using default value (8).");
+            return 8;
+        }
+    }
+
+    // Returns how many REST calls may wait before housekeeping is dropped
+    public int getRestMaxQueued() {
+        try {
+            return Math.max(1, Integer.parseInt(properties.getProperty("discord.restMaxQueued", "1000")));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'discord.restMaxQueued' in config.properties. Using default value (1000).");
+            return 1000;
+        }
+    }
+
+    // Returns the REST answer time in milliseconds above which a route is treated as rate limited
+    public long getRestCongestionMillis() {
+        try {
+            return Math.max(0, Long.parseLong(properties.getProperty("discord.restCongestionMillis", "1000")));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'discord.restCongestionMillis' in config.properties. Using default value (1000).");
+            return 1000;
+        }
+    }
+
+    // Returns where Discord DM commands run: virtual, pool or inline
+    public String getCommandExecutor() {
+        String mode = properties.getProperty("discord.commandExecutor", "pool").trim().toLowerCase(Locale.ROOT);
+        if (!mode.equals("virtual") && !mode.equals("pool") && !mode.equals("inline")) {
+            logger.warn("Invalid value for 'discord.commandExecutor' in config.properties. Using default value (pool).");
+            return "pool";
+        }
+        return mode;
+    }
+
+    // Returns the number of threads running DM commands in pool mode
+    public int getCommandPoolSize() {
+        try {
+            return Math.max(1, Integer.parseInt(properties.getProperty("discord.commandPoolSize", "8")));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'discord.commandPoolSize' in config.properties. Using default value (8).");
+            return 8;
+        }
+    }
+
+    // Returns the number of threads for JDA events, or 0 for JDA's default
+    public int getEventPoolSize() {
+        try {
+            return Math.max(0, Integer.parseInt(properties.getProperty("discord.eventPoolSize", "0")));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'discord.eventPoolSize' in config.properties. Using default value (0).");
+            return 0;
+        }
+    }
+
+    // Returns the number of threads for JDA REST callbacks, or 0 for JDA's default
+    public int getCallbackPoolSize() {
+        try {
+            return Math.max(0, Integer.parseInt(properties.getProperty("discord.callbackPoolSize", "0")));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'discord.callbackPoolSize' in config.properties. Using default value (0).");
+            return 0;
+        }
+    }
+
     // Returns the max failed attempts
     public int getMaxFailures() {
         try {
@@ -102,8 +303,368 @@ public class ConfigManager {
         }
     }
 
+    // Returns how long a player has to verify before being kicked, in seconds
+    public long getVerifyTimeoutSeconds() {
+        try {
+            return Long.parseLong(properties.getProperty("security.verifyTimeoutSeconds", "60"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'security.verifyTimeoutSeconds' in config.properties. Using default value (60).");
+            return 60;
+        }
+    }
+
+    // Returns how long failed verifications of an address are remembered, in minutes
+    public long getFailureWindowMinutes() {
+        try {
+            return Long.parseLong(properties.getProperty("security.failureWindowMinutes", "60"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'security.failureWindowMinutes' in config.properties. Using default value (60).");
+            return 60;
+        }
+    }
+
+    // Returns whether failures and blocks apply to the whole /24 (IPv4) or /64 (IPv6) subnet
+    public boolean isBlockSubnets() {
+        return Boolean.parseBoolean(properties.getProperty("security.blockSubnets", "false").trim());
+    }
+
+    // Returns the maximum number of addresses tracked for failures and blocks
+    public int getReputationSize() {
+        try {
+            return Integer.parseInt(properties.getProperty("security.reputationSize", "65536"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'security.reputationSize' in config.properties. Using default value (65536).");
+            return 65536;
+        }
+    }
+
+    // Returns the number of characters in a verification code
+    public int getCodeLength() {
+        try {
+            int length = Integer.parseInt(properties.getProperty("security.codeLength", "8"));
+            if (length < 4 || length > 32) {
+                logger.warn("Value for 'security.codeLength' in config.properties must be between 4 and 32. Using default value (8).");
+                return 8;
+            }
+            return length;
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'security.codeLength' in config.properties. Using default value (8).");
+            return 8;
+        }
+    }
+
+    // Returns the characters verification codes are made of; at least two distinct, printable characters
+    public String getCodeAlphabet() {
+        String defaultAlphabet = "23456789ABCDEFGHJKLMNPQRSTUVWXYZ";
+        String alphabet = properties.getProperty("security.codeAlphabet", defaultAlphabet).trim();
+        boolean valid = alphabet.length() >= 2 && alphabet.chars().distinct().count() == alphabet.length()
+                && alphabet.chars().allMatch(c -> c > ' ' && c < 127);
+        if (!valid) {
+            logger.warn("Invalid value for 'security.codeAlphabet' in config.properties. Using default value ({}).", defaultAlphabet);
+            return defaultAlphabet;
+        }
+        return alphabet;
+    }
+
+    // Returns the number of invalid codes a Discord user may send before being blocked
+    public int getMaxVerifyAttempts() {
+        try {
+            return Integer.parseInt(properties.getProperty("security.maxVerifyAttempts", "5"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'security.maxVerifyAttempts' in config.properties. Using default value (5).");
+            return 5;
+        }
+    }
+
+    // Returns how long a Discord user is blocked from !verify, in minutes
+    public long getVerifyAttemptBlockMinutes() {
+        try {
+            return Long.parseLong(properties.getProperty("security.verifyAttemptBlockMinutes", "15"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'security.verifyAttemptBlockMinutes' in config.properties. Using default value (15).");
+            return 15;
+        }
+    }
+
+    // Returns the logins allowed per minute from one address (0 = unlimited)
+    public long getAdmissionIpPerMinute() {
+        try {
+            return Long.parseLong(properties.getProperty("admission.ipPerMinute", "10"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'admission.ipPerMinute' in config.properties. Using default value (10).");
+            return 10;
+        }
+    }
+
+    // Returns the logins one address may make in a burst
+    public int getAdmissionIpBurst() {
+        try {
+            return Integer.parseInt(properties.getProperty("admission.ipBurst", "3"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'admission.ipBurst' in config.properties. Using default value (3).");
+            return 3;
+        }
+    }
+
+    // Returns the logins allowed per minute from one subnet (0 = unlimited)
+    public long getAdmissionSubnetPerMinute() {
+        try {
+            return Long.parseLong(properties.getProperty("admission.subnetPerMinute", "60"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'admission.subnetPerMinute' in config.properties. Using default value (60).");
+            return 60;
+        }
+    }
+
+    // Returns the logins one subnet may make in a burst
+    public int getAdmissionSubnetBurst() {
+        try {
+            return Integer.parseInt(properties.getProperty("admission.subnetBurst", "10"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'admission.subnetBurst' in config.properties. Using default value (10).");
+            return 10;
+        }
+    }
+
+    // Returns the logins allowed per minute across the proxy (0 = unlimited)
+    public long getAdmissionGlobalPerMinute() {
+        try {
+            return Long.parseLong(properties.getProperty("admission.globalPerMinute", "3000"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'admission.globalPerMinute' in config.properties. Using default value (3000).");
+            return 3000;
+        }
+    }
+
+    // Returns the logins the proxy accepts in a burst
+    public int getAdmissionGlobalBurst() {
+        try {
+            return Integer.parseInt(properties.getProperty("admission.globalBurst", "200"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'admission.globalBurst' in config.properties. Using default value (200).");
+            return 200;
+        }
+    }
+
+    // Returns the max number of players waiting to verify (0 = unlimited)
+    public int getAdmissionMaxUnverified() {
+        try {
+            return Integer.parseInt(properties.getProperty("admission.maxUnverified", "500"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'admission.maxUnverified' in config.properties. Using default value (500).");
+            return 500;
+        }
+    }
+
+    // Returns the number of rate-limit buckets kept for addresses and subnets
+    public int getAdmissionTableSize() {
+        try {
+            return Integer.parseInt(properties.getProperty("admission.tableSize", "65536"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'admission.tableSize' in config.properties. Using default value (65536).");
+            return 65536;
+        }
+    }
+
+    // Returns whether unverified players are kept on a holding server
+    public boolean isLimboEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("limbo.enabled", "false").trim());
+    }
+
+    // Returns the name of the holding server in velocity.toml
+    public String getLimboServer() {
+        return properties.getProperty("limbo.server", "limbo").trim();
+    }
+
+    // Returns the interval of the action-bar reminder in seconds (0 = no reminder)
+    public long getLimboReminderSeconds() {
+        try {
+            return Math.max(0, Long.parseLong(properties.getProperty("limbo.reminderSeconds", "3")));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'limbo.reminderSeconds' in config.properties. Using default value (3).");
+            return 3;
+        }
+    }
+
+    // Returns whether state is shared with other proxies
+    public boolean isClusterEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("cluster.enabled", "false").trim());
+    }
+
+    // Returns the URI of the Redis-protocol server shared by the proxies
+    public String getClusterRedisUri() {
+        return properties.getProperty("cluster.redisUri", "redis://127.0.0.1:6379").trim();
+    }
+
+    // Returns the prefix of every key and channel the plugin uses in Redis
+    public String getClusterKeyPrefix() {
+        String prefix = properties.getProperty("cluster.keyPrefix", "discordauth").trim();
+        return prefix.isEmpty() ? "discordauth" : prefix;
+    }
+
+    // Returns the name of this proxy in the cluster, or a random one if it is not set
+    public String getClusterProxyId() {
+        String proxyId = properties.getProperty("cluster.proxyId", "").trim();
+        return proxyId.isEmpty() ? UUID.randomUUID().toString() : proxyId;
+    }
+
+    // Returns how long the bot leader holds its lease without renewing, in seconds
+    public long getClusterLeaseSeconds() {
+        try {
+            return Math.max(1, Long.parseLong(properties.getProperty("cluster.leaseSeconds", "10")));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'cluster.leaseSeconds' in config.properties. Using default value (10).");
+            return 10;
+        }
+    }
+
+    // Returns how long a proxy caches a link read from the cluster, in seconds
+    public long getClusterCacheTtlSeconds() {
+        try {
+            return Math.max(0, Long.parseLong(properties.getProperty("cluster.cacheTtlSeconds", "300")));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'cluster.cacheTtlSeconds' in config.properties. Using default value (300).");
+            return 300;
+        }
+    }
+
+    // Returns how long a proxy caches that a player has no link, in seconds
+    public long getClusterNegativeCacheTtlSeconds() {
+        try {
+            return Math.max(0, Long.parseLong(properties.getProperty("cluster.negativeCacheTtlSeconds", "30")));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'cluster.negativeCacheTtlSeconds' in config.properties. Using default value (30).");
+            return 30;
+        }
+    }
+
+    // Returns whether events are recorded in audit.log
+    public boolean isAuditEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("audit.enabled", "true").trim());
+    }
+
+    // Returns how many audit events may wait to be written
+    public int getAuditBufferSize() {
+        try {
+            return Math.max(2, Integer.parseInt(properties.getProperty("audit.bufferSize", "8192")));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'audit.bufferSize' in config.properties. Using default value (8192).");
+            return 8192;
+        }
+    }
+
+    // Returns the size in bytes at which audit.log is rotated
+    public long getAuditMaxFileBytes() {
+        try {
+            return Math.max(1, Long.parseLong(properties.getProperty("audit.maxFileMb", "16"))) * 1024 * 1024;
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'audit.maxFileMb' in config.properties. Using default value (16).");
+            return 16L * 1024 * 1024;
+        }
+    }
+
+    // Returns how many audit.log files are kept
+    public int getAuditMaxFiles() {
+        try {
+            return Math.max(1, Integer.parseInt(properties.getProperty("audit.maxFiles", "5")));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'audit.maxFiles' in config.properties. Using default value (5).");
+            return 5;
+        }
+    }
+
+    // Returns whether metrics are collected
+    public boolean isMetricsEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("metrics.enabled", "true").trim());
+    }
+
+    // Returns the address the Prometheus endpoint listens on
+    public String getMetricsHttpHost() {
+        return properties.getProperty("metrics.httpHost", "127.0.0.1").trim();
+    }
+
+    // Returns the port of the Prometheus endpoint (0 = disabled)
+    public int getMetricsHttpPort() {
+        try {
+            return Integer.parseInt(properties.getProperty("metrics.httpPort", "0"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'metrics.httpPort' in config.properties. Using default value (0).");
+            return 0;
+        }
+    }
+
     // Returns the path to LOM's allowed users file. Can be empty.
     public String getLomAllowedUsersPath() {
         return properties.getProperty("integration.lom.allowedUsersPath", "");
     }
+
+    // Returns the storage backend type (json or h2)
+    public String getStorageType() {
+        return properties.getProperty("storage.type", "json").trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Returns the number of hot entries cached by the h2 backend
+    public int getStorageCacheSize() {
+        try {
+            return Integer.parseInt(properties.getProperty("storage.cacheSize", "10000"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'storage.cacheSize' in config.properties. Using default value (10000).");
+            return 10000;
+        }
+    }
+
+    // Returns the number of journal records that triggers a snapshot compaction
+    public int getCompactThreshold() {
+        try {
+            return Integer.parseInt(properties.getProperty("storage.compactThreshold", "10000"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'storage.compactThreshold' in config.properties. Using default value (10000).");
+            return 10000;
+        }
+    }
+
+    // Returns the periodic snapshot compaction interval in minutes
+    public long getCompactIntervalMinutes() {
+        try {
+            return Long.parseLong(properties.getProperty("storage.compactIntervalMinutes", "10"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'storage.compactIntervalMinutes' in config.properties. Using default value (10).");
+            return 10;
+        }
+    }
+
+    // Returns the write-behind group-commit window in milliseconds (0 disables write-behind)
+    public long getWriteBehindMillis() {
+        try {
+            return Long.parseLong(properties.getProperty("storage.writeBehindMillis", "10"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'storage.writeBehindMillis' in config.properties. Using default value (10).");
+            return 10;
+        }
+    }
+
+    // Returns the snapshot size in bytes above which it is parsed on all cores
+    public long getParallelLoadThresholdBytes() {
+        try {
+            return Long.parseLong(properties.getProperty("storage.parallelLoadThresholdMb", "16")) << 20;
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'storage.parallelLoadThresholdMb' in config.properties. Using default value (16).");
+            return 16L << 20;
+        }
+    }
+
+    // Returns whether verified players are loaded in the background
+    public boolean isLazyLoad() {
+        return Boolean.parseBoolean(properties.getProperty("storage.lazyLoad", "false").trim());
+    }
+
+    // Returns how long a lookup waits for a background load, in milliseconds
+    public long getLazyLookupMillis() {
+        try {
+            return Long.parseLong(properties.getProperty("storage.lazyLookupMillis", "2000"));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value for 'storage.lazyLookupMillis' in config.properties. Using default value (2000).");
+            return 2000;
+        }
+    }
 }
@@ -8,17 +8,24 @@ import net.kyori.adventure.text.event.ClickEvent;
 import org.slf4j.Logger;
 import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.PreLoginEvent;
 import com.velocitypowered.api.event.connection.PostLoginEvent;
 import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.player.PlayerChooseInitialServerEvent;
+import com.velocitypowered.api.event.player.ServerPreConnectEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Plugin(
         id = "discordauth",
@@ -26,26 +33,77 @@ import java.util.concurrent.TimeUnit;
         version = "1.1.0",
         description = "A plugin to link Velocity with Discord authentication", authors = {"Braur0"}
 )
-public class DiscordAuthPlugin {
+public class DiscordAuthPlugin implements Cluster.Listener {
+
+    private static final Component BLOCKED_MESSAGE =
+            Component.text("You are temporarily blocked due to failed Discord verification.");
+    private static final Component BUSY_MESSAGE =
+            Component.text("The server is receiving too many connections. Please try again in a moment.");
+    private static final long SHED_REPORT_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
 
     private final ProxyServer server;
     private final Logger logger;
+    private final Path dataDirectory;
+
+    // Last loaded config; reloads apply the settings that changed since
+    private ConfigManager config;
+    private final FileWatcher fileWatcher;
     private final VerifiedStorage storage;
     private final DiscordService discordService;
 
-    // Set to store usernames allowed by LOM
-    private final Set<String> lomAllowedUsers = new ConcurrentHashMap<>().newKeySet();
+    // Shared state between proxies; a standalone proxy is a cluster of one on an in-memory backend
+    private final ClusterBackend clusterBackend;
+    private final Cluster cluster;
+    private final BulkOperations bulkOperations;
+    private final CommandExecutor commandExecutor;
+    // Verifications, unlinks, kicks and blocks, written to audit.log in the background
+    private final AuditLog audit;
+
+    // Usernames allowed by LOM; replaced as a whole when the file changes
+    private volatile LomAllowList lomAllowList = LomAllowList.EMPTY;
+    private volatile Path lomFile;
+
+    // Failed verification attempts and blocks per IP (or subnet)
+    private final IpReputation reputation;
+    private volatile long blockTimeMillis;
+    // Invalid !verify attempts and blocks per Discord user
+    private final IpReputation verifyAttempts;
+
+    // Rate limits logins before they reach verification
+    private final AdmissionController admission;
+    private final AtomicLong lastShedReport = new AtomicLong(System.nanoTime() - SHED_REPORT_INTERVAL_NANOS);
+    private long reportedShed;
 
-    // Map to track failed login attempts per IP
-    private final Map<String, Integer> failedCount = new ConcurrentHashMap<>();
-    private final Map<String, Long> blockedUntil = new ConcurrentHashMap<>();
-    private final int maxFail;
-    private final long blockTimeMillis;
+    // Kicks players who have not verified in time; one wheel entry per pending player
+    private final TimeoutWheel verifyTimeouts;
+    private final long verifyTimeoutSeconds;
+    // Players are told to use /verify in the guild when DMs are not read
+    private final boolean slashVerify;
+    // Keeps unverified players off the backends; null unless limbo.enabled is set
+    private final HoldingServer holdingServer;
+
+    // What to do with unverified players who join before the Discord bot is ready
+    private volatile String notReadyPolicy;
+    private volatile long notReadyQueueSeconds;
+
+    private final Metrics metrics;
+    private final MetricsServer metricsServer;
+    private final Metrics.Counter lomBypasses;
+    private final Metrics.Counter codesIssued;
+    private final Metrics.Counter timeoutKicks;
+    private final Metrics.Counter ipBlocks;
+    private final Metrics.Counter blockedLogins;
 
     @Inject
     public DiscordAuthPlugin(ProxyServer server, Logger logger, @DataDirectory Path dataDirectory) {
+        this(server, logger, dataDirectory, DiscordService.Transport.GATEWAY);
+    }
+
+    // The load simulator runs the plugin against an offline stand-in for Discord
+    DiscordAuthPlugin(ProxyServer server, Logger logger, Path dataDirectory, DiscordService.Transport transport) {
         this.server = server;
         this.logger = logger;
+        this.dataDirectory = dataDirectory;
 
         try {
             if (Files.notExists(dataDirectory)) {
@@ -55,139 +113,559 @@ public class DiscordAuthPlugin {
             throw new RuntimeException("Failed to create plugin data directory", e);
         }
 
-        // Initialize storage for verified players
-        this.storage = new VerifiedStorage(dataDirectory.resolve("verified.json"), logger);
+        StartupTimings timings = new StartupTimings();
 
         // Load configuration
+        long phaseStart = System.nanoTime();
         ConfigManager config = new ConfigManager(dataDirectory, logger);
+        this.config = config;
+        timings.record("config", phaseStart);
+
+        this.metrics = new Metrics(config.isMetricsEnabled());
+
+        String keyPrefix = config.getClusterKeyPrefix();
+        if (config.isClusterEnabled()) {
+            this.clusterBackend = new RedisClusterBackend(config.getClusterRedisUri(), logger);
+            this.cluster = new Cluster(clusterBackend, keyPrefix, config.getClusterProxyId(),
+                    TimeUnit.SECONDS.toMillis(config.getClusterLeaseSeconds()), logger);
+            logger.info("Cluster mode enabled as proxy {}.", cluster.getProxyId());
+        } else {
+            this.clusterBackend = new InMemoryClusterBackend();
+            this.cluster = new Cluster(clusterBackend, keyPrefix, "standalone",
+                    TimeUnit.SECONDS.toMillis(config.getClusterLeaseSeconds()), logger);
+        }
+
+        // Initialize storage for verified players
+        phaseStart = System.nanoTime();
+        this.storage = createStorage(config, dataDirectory);
+        timings.record("storage load", phaseStart);
+
         String token = config.getToken();
         long guildId = config.getGuildId();
         long roleId = config.getRoleId();
         long adminId = config.getAdminId();
-        this.maxFail = config.getMaxFailures();
         this.blockTimeMillis = TimeUnit.MINUTES.toMillis(config.getBlockMinutes());
+        this.reputation = new IpReputation(config.getReputationSize(), config.isBlockSubnets(), config.getMaxFailures(),
+                TimeUnit.MINUTES.toMillis(config.getFailureWindowMinutes()), blockTimeMillis);
+        this.admission = new AdmissionController(config.getAdmissionTableSize(),
+                config.getAdmissionIpPerMinute(), config.getAdmissionIpBurst(),
+                config.getAdmissionSubnetPerMinute(), config.getAdmissionSubnetBurst(),
+                config.getAdmissionGlobalPerMinute(), config.getAdmissionGlobalBurst(),
+                config.getAdmissionMaxUnverified());
+        this.verifyTimeoutSeconds = config.getVerifyTimeoutSeconds();
+        this.slashVerify = config.getVerifyMode().equals("slash");
+        this.verifyTimeouts = new TimeoutWheel(100, TimeUnit.MILLISECONDS, logger);
+        this.notReadyPolicy = config.getNotReadyPolicy();
+        this.notReadyQueueSeconds = config.getNotReadyQueueSeconds();
+
+        this.audit = new AuditLog(config.isAuditEnabled(), dataDirectory.resolve("audit.log"), config.getAuditBufferSize(),
+                config.getAuditMaxFileBytes(), config.getAuditMaxFiles(), logger, metrics);
+        this.bulkOperations = new BulkOperations(cluster, audit, logger, storage, dataDirectory);
+
+        // In a cluster codes are reserved in the backend until shortly after they time out
+        VerificationCodes codes = config.isClusterEnabled()
+                ? new SharedVerificationCodes(config.getCodeAlphabet(), config.getCodeLength(), clusterBackend, keyPrefix,
+                        TimeUnit.SECONDS.toMillis(verifyTimeoutSeconds) + TimeUnit.MINUTES.toMillis(1))
+                : new VerificationCodes(config.getCodeAlphabet(), config.getCodeLength());
 
+        // Invalid !verify attempts are tracked per Discord user in the same bounded table used for addresses
+        long attemptBlockMillis = TimeUnit.MINUTES.toMillis(config.getVerifyAttemptBlockMinutes());
+        this.verifyAttempts = new IpReputation(config.getReputationSize(), false, config.getMaxVerifyAttempts(),
+                attemptBlockMillis, attemptBlockMillis);
 
-        // Initialize Discord service and pass plugin reference
-        this.discordService = new DiscordService(token, server, logger, storage,
-                guildId, roleId, adminId, this);
+        this.commandExecutor = new CommandExecutor(config.getCommandExecutor(), config.getCommandPoolSize(), logger);
+        logger.info("Discord commands run in {} mode.", commandExecutor.getMode());
+
+        // Initialize Discord service; the bot connects in the background once this proxy is the cluster leader
+        this.discordService = new DiscordService(token, logger, storage,
+                guildId, roleId, adminId, config.getVerifyMode(), config.getMemberCacheMode(), config.getMemberCacheSize(),
+                codes, verifyAttempts, bulkOperations,
+                new RestDispatcher(config.getRestMaxInFlight(), config.getRestMaxInFlightTotal(), config.getRestMaxQueued(),
+                        config.getRestCongestionMillis(), logger, metrics),
+                commandExecutor, config.getEventPoolSize(), config.getCallbackPoolSize(),
+                cluster, audit, timings, metrics, transport);
+
+        // Unverified players wait on the holding server and move on once they verify
+        if (config.isLimboEnabled()) {
+            this.holdingServer = new HoldingServer(server, config.getLimboServer(), config.getLimboReminderSeconds(), logger);
+            metrics.gauge("limbo_players", "Unverified players kept on the holding server.", holdingServer::size);
+            logger.info("Unverified players are kept on holding server '{}'.", config.getLimboServer());
+        } else {
+            this.holdingServer = null;
+        }
+
+        this.lomBypasses = metrics.counter("lom_bypasses_total", "Logins that skipped verification through LOM's allow-list.");
+        this.codesIssued = metrics.counter("codes_issued_total", "Verification codes handed out.");
+        this.timeoutKicks = metrics.counter("timeout_kicks_total", "Players kicked for not verifying in time.");
+        this.ipBlocks = metrics.counter("ip_blocks_total", "Addresses blocked after repeated failed verifications.");
+        this.blockedLogins = metrics.counter("blocked_logins_total", "Logins denied because the address is blocked.");
+        metrics.gauge("pending_codes", "Verification codes waiting to be used.", codes::size);
+        metrics.gauge("unverified_sessions", "Players waiting to verify.", admission::getUnverifiedSessions);
+        metrics.gauge("reputation_entries", "Addresses tracked for failures and blocks.",
+                () -> reputation.size(System.currentTimeMillis()));
+        metrics.gauge("cluster_leader", "1 if this proxy holds the cluster lease and runs the bot.",
+                () -> cluster.isLeader() ? 1 : 0);
+        metrics.counter("admission_accepted_total", "Logins admitted by rate limiting.", admission::getAccepted);
+        for (AdmissionController.Result reason : AdmissionController.Result.values()) {
+            if (reason != AdmissionController.Result.ACCEPTED) {
+                String name = reason.name().toLowerCase(Locale.ROOT);
+                metrics.counter("admission_shed_" + name + "_total", "Logins shed by the " + name + " limit.",
+                        () -> admission.getShed(reason));
+            }
+        }
+
+        server.getCommandManager().register(
+                server.getCommandManager().metaBuilder("discordauth").plugin(this).build(),
+                new AdminCommand(metrics, audit, () -> server.getScheduler().buildTask(this, this::reload).schedule()));
+        this.metricsServer = startMetricsServer(config);
+
+        // Pick up edits to config.properties and allowed-users.txt without a restart
+        this.fileWatcher = startFileWatcher();
 
         // Load users from LOM's config file for seamless integration
-        loadLomAllowedUsers(config);
+        configureLomAllowList(config.getLomAllowedUsersPath());
+
+        cluster.start(this, discordService::start, discordService::stop);
 
         logger.info("DiscordAuthPlugin initialized!");
     }
 
+    Metrics getMetrics() {
+        return metrics;
+    }
+
+    private VerifiedStorage createStorage(ConfigManager config, Path dataDirectory) {
+        if (config.isClusterEnabled()) {
+            logger.info("Using shared cluster storage for verified players; storage.type is ignored.");
+            NearCache cache = new NearCache(config.getStorageCacheSize(),
+                    TimeUnit.SECONDS.toMillis(config.getClusterCacheTtlSeconds()),
+                    TimeUnit.SECONDS.toMillis(config.getClusterNegativeCacheTtlSeconds()), metrics);
+            return new SharedVerifiedStorage(clusterBackend, config.getClusterKeyPrefix(), logger, cache);
+        }
+
+        String type = config.getStorageType();
+        switch (type) {
+            case "json":
+                return new JsonVerifiedStorage(dataDirectory.resolve("verified.json"), logger,
+                        config.getCompactThreshold(), config.getCompactIntervalMinutes(), config.getWriteBehindMillis(),
+                        config.getParallelLoadThresholdBytes(), config.isLazyLoad(), config.getLazyLookupMillis(),
+                        metrics);
+            case "h2":
+                logger.info("Using embedded H2 storage for verified players.");
+                return new H2VerifiedStorage(dataDirectory.resolve("verified"), logger, config.getStorageCacheSize());
+            default:
+                throw new RuntimeException("Unknown storage type '" + type + "' in configuration (expected json or h2)");
+        }
+    }
+
+    private MetricsServer startMetricsServer(ConfigManager config) {
+        int port = config.getMetricsHttpPort();
+        if (port <= 0 || !metrics.isEnabled()) {
+            return null;
+        }
+        try {
+            return new MetricsServer(config.getMetricsHttpHost(), port, metrics, logger);
+        } catch (IOException e) {
+            logger.error("Failed to start the metrics endpoint on {}:{}", config.getMetricsHttpHost(), port, e);
+            return null;
+        }
+    }
+
     @Subscribe
     public void onPreLogin(PreLoginEvent event) {
         InetSocketAddress address = event.getConnection().getRemoteAddress();
-        String ip = address.getAddress().getHostAddress();
+        // Reduced once; the reputation and admission keys are derived from it
+        long addressKey = IpReputation.key(address.getAddress(), false);
 
-        Long until = blockedUntil.get(ip);
-        long now = System.currentTimeMillis();
+        // Deny login if IP is currently blocked; expired blocks are dropped by the table itself
+        if (reputation.isBlocked(reputation.key(addressKey), System.currentTimeMillis())) {
+            event.setResult(PreLoginEvent.PreLoginComponentResult.denied(BLOCKED_MESSAGE));
+            blockedLogins.increment();
+            return;
+        }
 
-        // Deny login if IP is currently blocked
-        if (until != null && now < until) {
-            event.setResult(PreLoginEvent.PreLoginComponentResult.denied(
-                    Component.text("You are temporarily blocked due to failed Discord verification.")
-            ));
-        } else if (until != null && now >= until) {
-            // Remove block and reset fail count if block expired
-            blockedUntil.remove(ip);
-            failedCount.remove(ip);
+        // Shed the connection if its address, subnet or the proxy is over its login rate
+        if (admission.admit(addressKey) != AdmissionController.Result.ACCEPTED) {
+            event.setResult(PreLoginEvent.PreLoginComponentResult.denied(BUSY_MESSAGE));
+            reportShedding();
+        }
+    }
+
+    /**
+     * Log a summary of shed connections at most once a minute while logins are being shed.
+     */
+    private void reportShedding() {
+        long now = System.nanoTime();
+        long last = lastShedReport.get();
+        if (now - last < SHED_REPORT_INTERVAL_NANOS || !lastShedReport.compareAndSet(last, now)) {
+            return;
+        }
+
+        long total = admission.getShedTotal();
+        logger.warn("Shed {} logins since the last report ({} total: ip={}, subnet={}, global={}, unverified cap={}); accepted {} total, {} players waiting to verify.",
+                total - reportedShed, total,
+                admission.getShed(AdmissionController.Result.IP), admission.getShed(AdmissionController.Result.SUBNET),
+                admission.getShed(AdmissionController.Result.GLOBAL), admission.getShed(AdmissionController.Result.SESSIONS),
+                admission.getAccepted(), admission.getUnverifiedSessions());
+        reportedShed = total;
+    }
+
+    private FileWatcher startFileWatcher() {
+        try {
+            FileWatcher watcher = new FileWatcher(logger);
+            watcher.watch(dataDirectory.resolve("config.properties"), this::reloadConfig);
+            return watcher;
+        } catch (IOException e) {
+            logger.warn("Cannot watch config.properties for changes; use /discordauth reload after editing it.", e);
+            return null;
         }
     }
 
-    private void loadLomAllowedUsers(ConfigManager config) {
-        String lomPathStr = config.getLomAllowedUsersPath();
+    /**
+     * Reload config.properties and LOM's allowed-users.txt. Called by {@code /discordauth reload}.
+     */
+    private void reload() {
+        reloadConfig();
+        reloadLomAllowList(false);
+    }
+
+    private void configureLomAllowList(String lomPathStr) {
+        Path previous = lomFile;
+        if (previous != null && fileWatcher != null) {
+            fileWatcher.unwatch(previous);
+        }
 
         // If the path is not configured or empty, do nothing.
         if (lomPathStr == null || lomPathStr.isBlank()) {
+            lomFile = null;
+            lomAllowList = LomAllowList.EMPTY;
             logger.info("LOM integration is disabled as 'integration.lom.allowedUsersPath' is not set.");
             return;
         }
 
+        Path lomConfigFile = Path.of(lomPathStr);
+        lomFile = lomConfigFile;
+        if (fileWatcher != null) {
+            try {
+                fileWatcher.watch(lomConfigFile, () -> reloadLomAllowList(true));
+            } catch (IOException e) {
+                logger.warn("Cannot watch {} for changes; use /discordauth reload after editing it.", lomConfigFile, e);
+            }
+        }
+        reloadLomAllowList(false);
+    }
+
+    /**
+     * Read LOM's allowed-users.txt into a new snapshot and swap it in; logins keep using the previous
+     * snapshot until the new one is complete.
+     *
+     * @param keepIfMissing keep the current list if the file is gone, as it may be in the middle of being replaced
+     */
+    private synchronized void reloadLomAllowList(boolean keepIfMissing) {
+        Path lomConfigFile = lomFile;
+        if (lomConfigFile == null) {
+            return;
+        }
+
         try {
-            Path lomConfigFile = Path.of(lomPathStr);
-            if (Files.exists(lomConfigFile)) {
-                lomAllowedUsers.clear(); // Clear before loading
-                Files.readAllLines(lomConfigFile).forEach(line -> {
-                    String trimmed = line.trim();
-                    if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
-                        lomAllowedUsers.add(trimmed.toLowerCase(Locale.ROOT));
-                    }
-                });
-                logger.info("Successfully loaded {} users from LOM file: {}", lomAllowedUsers.size(), lomConfigFile);
-            } else {
+            if (Files.notExists(lomConfigFile)) {
                 logger.warn("LOM integration enabled, but file not found at: {}", lomConfigFile);
+                if (!keepIfMissing) {
+                    lomAllowList = LomAllowList.EMPTY;
+                }
+                return;
+            }
+
+            long start = System.nanoTime();
+            LomAllowList loaded = LomAllowList.load(lomConfigFile);
+            LomAllowList previous = lomAllowList;
+            lomAllowList = loaded;
+            if (previous == LomAllowList.EMPTY) {
+                logger.info("Successfully loaded {} users from LOM file: {}", loaded.size(), lomConfigFile);
+            } else {
+                logger.info("Reloaded {} users from LOM file {} in {} ms ({} added, {} removed).", loaded.size(), lomConfigFile,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                        loaded.countMissingFrom(previous), previous.countMissingFrom(loaded));
             }
         } catch (Exception e) {
-            logger.error("An error occurred while reading LOM's allowed-users.txt from path: {}", lomPathStr, e);
+            logger.error("An error occurred while reading LOM's allowed-users.txt from path: {}", lomConfigFile, e);
+        }
+    }
+
+    /**
+     * Reload config.properties and apply the settings that changed. Settings that need a restart are
+     * reported and otherwise ignored.
+     */
+    private synchronized void reloadConfig() {
+        if (Files.notExists(dataDirectory.resolve("config.properties"))) {
+            // Being replaced; the watcher fires again once the new file is in place
+            return;
+        }
+
+        ConfigManager next;
+        try {
+            next = new ConfigManager(dataDirectory, logger);
+        } catch (RuntimeException e) {
+            logger.error("Failed to reload config.properties; keeping the current settings.", e);
+            return;
+        }
+
+        Set<String> changed = config.changedKeys(next);
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        List<String> applied = new ArrayList<>();
+        List<String> needRestart = new ArrayList<>();
+        for (String key : changed) {
+            switch (key) {
+                case "security.maxFailures":
+                case "security.blockMinutes":
+                case "security.failureWindowMinutes":
+                    blockTimeMillis = TimeUnit.MINUTES.toMillis(next.getBlockMinutes());
+                    reputation.setLimits(next.getMaxFailures(),
+                            TimeUnit.MINUTES.toMillis(next.getFailureWindowMinutes()), blockTimeMillis);
+                    break;
+                case "security.maxVerifyAttempts":
+                case "security.verifyAttemptBlockMinutes":
+                    long attemptBlockMillis = TimeUnit.MINUTES.toMillis(next.getVerifyAttemptBlockMinutes());
+                    verifyAttempts.setLimits(next.getMaxVerifyAttempts(), attemptBlockMillis, attemptBlockMillis);
+                    break;
+                case "discord.roleId":
+                    discordService.setRoleId(next.getRoleId());
+                    break;
+                case "discord.notReadyPolicy":
+                    notReadyPolicy = next.getNotReadyPolicy();
+                    break;
+                case "discord.notReadyQueueSeconds":
+                    notReadyQueueSeconds = next.getNotReadyQueueSeconds();
+                    break;
+                case "integration.lom.allowedUsersPath":
+                    configureLomAllowList(next.getLomAllowedUsersPath());
+                    break;
+                default:
+                    needRestart.add(key);
+                    continue;
+            }
+            applied.add(key);
+        }
+        config = next;
+
+        if (!applied.isEmpty()) {
+            logger.info("Reloaded config.properties; applied {}.", String.join(", ", applied));
+        }
+        if (!needRestart.isEmpty()) {
+            logger.warn("Changes to {} take effect after a proxy restart.", String.join(", ", needRestart));
         }
     }
 
     @Subscribe
-    public void onPostLogin(PostLoginEvent event) {
+    public EventTask onPostLogin(PostLoginEvent event) {
         Player player = event.getPlayer();
         final UUID playerId = player.getUniqueId();
-        final String ip = player.getRemoteAddress().getAddress().getHostAddress();
         final String username = player.getUsername();
 
         // Integration with "Limited Offline Mode" (LOM)
         // Check if the username is in the list we loaded from LOM's config
-        if (lomAllowedUsers.contains(username.toLowerCase(Locale.ROOT))) {
+        if (lomAllowList.contains(username)) {
             logger.info("Skipping Discord auth for {} as they are in LOM's allowed-users.txt.", username);
             player.sendMessage(Component.text("✅ Discord check skipped (authenticated by LOM)."));
-            return;
+            lomBypasses.increment();
+            audit.record(AuditLog.Type.LOM_BYPASS, playerId, 0, null, 0);
+            return null;
         }
 
         // If player is already verified
         if (discordService.isVerified(playerId)) {
             player.sendMessage(Component.text("✅ Discord account already verified."));
-            return;
+            return null;
         }
 
+        // Counts towards admission.maxUnverified until the player verifies, times out or leaves; only players
+        // that need to verify are capped, so a flood of unverified connections cannot lock out linked players
+        if (!admission.sessionStarted(playerId)) {
+            player.disconnect(BUSY_MESSAGE);
+            reportShedding();
+            return null;
+        }
+        if (holdingServer != null) {
+            holdingServer.hold(playerId);
+        }
+
+        if (!cluster.isBotReady()) {
+            switch (notReadyPolicy) {
+                case "deny":
+                    player.disconnect(Component.text("Discord verification is starting up. Please try again in a moment."));
+                    return null;
+                case "queue":
+                    // Hold the login until the bot is ready, then continue with the normal verification
+                    CompletableFuture<Void> queued = cluster.whenBotReady()
+                            .completeOnTimeout(null, notReadyQueueSeconds, TimeUnit.SECONDS)
+                            .exceptionally(error -> null)
+                            .thenRun(() -> {
+                                if (cluster.isBotReady()) {
+                                    startVerification(player);
+                                } else {
+                                    player.disconnect(Component.text("Discord verification is unavailable. Please try again later."));
+                                }
+                            });
+                    return EventTask.resumeWhenComplete(queued);
+                default:
+                    // "allow": hand out the code now, the bot will pick up the DM once it is connected
+                    player.sendMessage(Component.text("The Discord bot is still starting; your code will work as soon as it is online."));
+                    break;
+            }
+        }
+
+        startVerification(player);
+        return null;
+    }
+
+    private void startVerification(Player player) {
+        final UUID playerId = player.getUniqueId();
+
         // Generate verification code and send instructions
         String code = discordService.generateVerificationCode(playerId);
-        String copyText = "!verify " + code;
+        if (code == null) {
+            player.disconnect(Component.text("Could not create a verification code. Please try again in a moment."));
+            logger.warn("No free verification code for player {}; consider a longer security.codeLength.", player.getUsername());
+            return;
+        }
+        codesIssued.increment();
+        String copyText = (slashVerify ? "/verify " : "!verify ") + code;
+        String instruction = slashVerify
+                ? "Discord verification required. Run the following command in the Discord server within "
+                : "Discord verification required. Send the following code via DM on Discord within ";
         player.sendMessage(
-                Component.text("Discord verification required. Send the following code via DM on Discord within 1 minute:\n")
+                Component.text(instruction + describeTimeout() + ":\n")
                         .append(Component.text(copyText).clickEvent(ClickEvent.copyToClipboard(copyText)))
         );
+        if (holdingServer != null) {
+            holdingServer.setReminder(playerId, Component.text("Discord verification required: " + copyText));
+        }
+
+        // Kick the player if not verified in time; also expires the pending code
+        verifyTimeouts.schedule(playerId, verifyTimeoutSeconds, TimeUnit.SECONDS, () -> expireVerification(player));
+    }
 
-        // Schedule a task to kick the player after 1 minute if not verified
-        server.getScheduler()
-                .buildTask(this, () -> {
-                    if (player.isActive() && !discordService.isVerified(playerId)) {
-                        player.disconnect(Component.text("Verification failed. Repeated failures will result in a temporary block."));
-                        logger.info("Kicked player {} due to unverified Discord account.", player.getUsername());
+    private void expireVerification(Player player) {
+        final UUID playerId = player.getUniqueId();
 
-                        // Get the most recent IP address at the moment of kicking
-                        final String currentIp = player.getRemoteAddress().getAddress().getHostAddress();
+        if (player.isActive() && !discordService.isVerified(playerId)) {
+            player.disconnect(Component.text("Verification failed. Repeated failures will result in a temporary block."));
+            logger.info("Kicked player {} due to unverified Discord account.", player.getUsername());
+            timeoutKicks.increment();
 
-                        // Increment failed attempts for the IP
-                        int count = failedCount.getOrDefault(currentIp, 0) + 1;
-                        failedCount.put(currentIp, count);
+            // Get the most recent IP address at the moment of kicking
+            final InetAddress currentIp = player.getRemoteAddress().getAddress();
+            audit.record(AuditLog.Type.TIMEOUT_KICK, playerId, 0, currentIp, 0);
 
-                        // Block IP if max failures reached
-                        if (count >= maxFail) {
-                            blockedUntil.put(currentIp, System.currentTimeMillis() + blockTimeMillis);
-                            failedCount.remove(currentIp);
-                            logger.info("IP {} has been blocked for {} minutes due to repeated failed verifications.", currentIp, TimeUnit.MILLISECONDS.toMinutes(blockTimeMillis));
-                        }
+            // Count the failure and block the IP if max failures reached
+            long now = System.currentTimeMillis();
+            long key = reputation.key(currentIp);
+            if (reputation.recordFailure(key, now)) {
+                ipBlocks.increment();
+                // Block the address on the other proxies as well
+                cluster.publishBlocked(key, now + blockTimeMillis);
+                audit.record(AuditLog.Type.IP_BLOCKED, null, 0, currentIp, now + blockTimeMillis);
+                logger.info("IP {} has been blocked for {} minutes due to repeated failed verifications.", currentIp.getHostAddress(), TimeUnit.MILLISECONDS.toMinutes(blockTimeMillis));
+            }
+        }
 
-                        // Remove pending verification code
-                        discordService.removePendingCode(playerId);
-                    }
-                })
-                .delay(1, TimeUnit.MINUTES)
-                .schedule();
+        // Remove pending verification code
+        discordService.removePendingCode(playerId);
+        admission.sessionEnded(playerId);
+        if (holdingServer != null) {
+            holdingServer.forget(playerId);
+        }
+    }
+
+    @Subscribe
+    public void onChooseInitialServer(PlayerChooseInitialServerEvent event) {
+        UUID playerId = event.getPlayer().getUniqueId();
+        if (holdingServer == null || !holdingServer.isHeld(playerId)) {
+            return;
+        }
+
+        // Send the player to the holding server and remember where Velocity would have sent them
+        holdingServer.get().ifPresent(holding -> {
+            event.getInitialServer().ifPresent(target -> holdingServer.setTarget(playerId, target));
+            event.setInitialServer(holding);
+        });
+    }
+
+    @Subscribe
+    public void onServerPreConnect(ServerPreConnectEvent event) {
+        UUID playerId = event.getPlayer().getUniqueId();
+        if (holdingServer == null || !holdingServer.isHeld(playerId)) {
+            return;
+        }
+
+        RegisteredServer target = event.getResult().getServer().orElse(null);
+        if (target == null || holdingServer.isHoldingServer(target) || holdingServer.get().isEmpty()) {
+            return;
+        }
+        // Keep unverified players off the backends; they go to the last server they asked for once verified
+        holdingServer.setTarget(playerId, target);
+        event.setResult(ServerPreConnectEvent.ServerResult.denied());
+        event.getPlayer().sendMessage(Component.text("Please verify your Discord account first."));
+    }
+
+    private String describeTimeout() {
+        if (verifyTimeoutSeconds % 60 == 0) {
+            long minutes = verifyTimeoutSeconds / 60;
+            return minutes == 1 ? "1 minute" : minutes + " minutes";
+        }
+        return verifyTimeoutSeconds == 1 ? "1 second" : verifyTimeoutSeconds + " seconds";
+    }
+
+    /**
+     * Called on every proxy once a player's link is stored, whichever proxy runs the bot.
+     */
+    @Override
+    public void onVerified(UUID playerId) {
+        verifyTimeouts.cancel(playerId);
+        admission.sessionEnded(playerId);
+        discordService.removePendingCode(playerId);
+        server.getPlayer(playerId).ifPresent(p -> {
+            p.sendMessage(Component.text("✅ Discord verification successful!"));
+            if (holdingServer != null) {
+                holdingServer.release(p);
+            }
+        });
+    }
+
+    /**
+     * Called on every proxy when an admin removes a player's link.
+     */
+    @Override
+    public void onRevoked(UUID playerId) {
+        discordService.removePendingCode(playerId);
+        if (holdingServer != null) {
+            holdingServer.forget(playerId);
+        }
+        server.getPlayer(playerId).ifPresent(p ->
+                p.disconnect(Component.text("Your Discord verification has been removed."))
+        );
+    }
+
+    /**
+     * Called on every proxy when any proxy blocks an address.
+     */
+    @Override
+    public void onBlocked(long key, long until) {
+        reputation.block(key, until, System.currentTimeMillis());
     }
 
     @Subscribe
     public void onDisconnect(DisconnectEvent event) {
         Player player = event.getPlayer();
         UUID playerId = player.getUniqueId();
+        verifyTimeouts.cancel(playerId);
+        admission.sessionEnded(playerId);
+        if (holdingServer != null) {
+            holdingServer.forget(playerId);
+        }
 
         // プレイヤーが未認証のまま切断した場合、保留中の認証コードを削除する
         if (!discordService.isVerified(playerId)) {
@@ -195,4 +673,28 @@ public class DiscordAuthPlugin {
             logger.info("Player {} disconnected while unverified. Pending verification code removed.", player.getUsername());
         }
     }
+
+    @Subscribe
+    public void onProxyShutdown(ProxyShutdownEvent event) {
+        // Stops the bot and hands the lease to another proxy
+        cluster.stop();
+        commandExecutor.shutdown();
+        bulkOperations.shutdown();
+        if (holdingServer != null) {
+            holdingServer.stop();
+        }
+        if (fileWatcher != null) {
+            fileWatcher.stop();
+        }
+        verifyTimeouts.stop();
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        // Write the audit events still in the buffer
+        audit.stop();
+
+        // Flush queued verification writes and fold the journal into a final snapshot
+        storage.close();
+        clusterBackend.close();
+    }
 }
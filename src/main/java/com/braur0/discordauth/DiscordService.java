@@ -1,7 +1,5 @@
 package com.braur0.discordauth;
 
-import com.velocitypowered.api.proxy.Player;
-import com.velocitypowered.api.proxy.ProxyServer;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.entities.Guild;
@@ -9,72 +7,357 @@ import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Role;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.entities.channel.ChannelType;
+import net.dv8tion.jda.api.hooks.EventListener;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.interaction.ModalInteractionEvent;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.interactions.InteractionHook;
+import net.dv8tion.jda.api.interactions.commands.DefaultMemberPermissions;
+import net.dv8tion.jda.api.interactions.commands.OptionMapping;
+import net.dv8tion.jda.api.interactions.commands.OptionType;
+import net.dv8tion.jda.api.interactions.commands.build.Commands;
+import net.dv8tion.jda.api.interactions.commands.build.SlashCommandData;
+import net.dv8tion.jda.api.interactions.commands.build.SubcommandData;
+import net.dv8tion.jda.api.interactions.components.text.TextInput;
+import net.dv8tion.jda.api.interactions.components.text.TextInputStyle;
+import net.dv8tion.jda.api.interactions.modals.Modal;
+import net.dv8tion.jda.api.interactions.modals.ModalMapping;
 import net.dv8tion.jda.api.requests.GatewayIntent;
-import net.kyori.adventure.text.Component;
+import net.dv8tion.jda.api.utils.ChunkingFilter;
+import net.dv8tion.jda.api.utils.MemberCachePolicy;
 import org.slf4j.Logger;
 
-import java.util.Map;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Service class to handle Discord authentication for Minecraft players.
  */
 public class DiscordService extends ListenerAdapter {
 
-    private final JDA jda;
+    /**
+     * Lifecycle of the Discord bot connection.
+     */
+    public enum ReadyState { STOPPED, STARTING, READY, FAILED }
+
+    private static final String VERIFY_MODAL = "discordauth:verify";
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    /**
+     * Opens the bot's connection to Discord. The plugin opens a gateway session; the load simulator passes an
+     * offline stand-in that delivers events to the listener itself.
+     */
+    interface Transport {
+        Transport GATEWAY = (builder, listener) -> builder.build();
+
+        JDA connect(JDABuilder builder, EventListener listener) throws Exception;
+    }
+
+    private final String token;
+    private final Transport transport;
+    private volatile JDA jda;
+    private volatile ReadyState state = ReadyState.STOPPED;
+    private volatile CompletableFuture<Void> ready = new CompletableFuture<>();
+    // Bumped by every start and stop so a startup that was stopped half-way discards its connection
+    private int generation;
+
     private final Logger logger;
-    private final ProxyServer server;
     private final VerifiedStorage verifiedStorage;
-    private final DiscordAuthPlugin plugin;
-
-    // Map to track pending verification codes for each player
-    private final Map<UUID, String> pendingCodes = new ConcurrentHashMap<>();
-    private final Map<String, UUID> codeToPlayerId = new ConcurrentHashMap<>();
+    private final Cluster cluster;
+    private final StartupTimings timings;
+    private final BulkOperations bulkOperations;
+    private final AuditLog audit;
+    // Every REST call goes through the dispatcher, so replies to !verify overtake housekeeping
+    private final RestDispatcher rest;
+    // Runs commands off JDA's event thread, in order per Discord user
+    private final CommandExecutor commands;
+    // Sizes of JDA's event and callback pools; 0 keeps JDA's defaults
+    private final int eventPoolSize;
+    private final int callbackPoolSize;
+
+    // Pending verification codes, unique among all waiting players
+    private final VerificationCodes codes;
+    // Invalid !verify attempts and blocks per Discord user, keyed by user ID
+    private final IpReputation verifyAttempts;
 
     private final long allowedGuildId;
-    private final long allowedRoleId;
+    // Can be changed by a config reload without reconnecting
+    private volatile long allowedRoleId;
     private final long adminId;
-
-    public DiscordService(String token, ProxyServer server, Logger logger,
+    // Verification mode: dm, slash or both
+    private final boolean dmCommands;
+    private final boolean slashCommands;
+
+    // Member cache mode: role-holders, lru or none
+    private final String memberCacheMode;
+    private final int memberCacheSize;
+    // Only set in role-holders mode; replaced when the role changes
+    private volatile RoleHolderIndex roleHolders;
+
+    private final Metrics.Counter verifications;
+    private final Metrics.Counter invalidCodes;
+    private final Metrics.Counter rateLimitedAttempts;
+    private final Metrics.Histogram memberLookupTimes;
+    private final Metrics.Histogram persistTimes;
+    private final Metrics.Histogram commandTimes;
+    private final Metrics.Counter gatewayEvents;
+
+    public DiscordService(String token, Logger logger,
                           VerifiedStorage verifiedStorage,
-                          long allowedGuildId, long allowedRoleId, long adminId,
-                          DiscordAuthPlugin plugin) {
-        this.server = server;
+                          long allowedGuildId, long allowedRoleId, long adminId, String verifyMode,
+                          String memberCacheMode, int memberCacheSize,
+                          VerificationCodes codes, IpReputation verifyAttempts,
+                          BulkOperations bulkOperations, RestDispatcher rest, CommandExecutor commands,
+                          int eventPoolSize, int callbackPoolSize, Cluster cluster,
+                          AuditLog audit, StartupTimings timings, Metrics metrics, Transport transport) {
+        this.token = token;
+        this.transport = transport;
         this.logger = logger;
         this.verifiedStorage = verifiedStorage;
         this.allowedGuildId = allowedGuildId;
         this.allowedRoleId = allowedRoleId;
         this.adminId = adminId;
-        this.plugin = plugin;
+        this.dmCommands = !verifyMode.equals("slash");
+        this.slashCommands = !verifyMode.equals("dm");
+        this.cluster = cluster;
+        this.timings = timings;
+        this.bulkOperations = bulkOperations;
+        this.audit = audit;
+        this.rest = rest;
+        this.commands = commands;
+        this.eventPoolSize = eventPoolSize;
+        this.callbackPoolSize = callbackPoolSize;
+        this.codes = codes;
+        this.verifyAttempts = verifyAttempts;
+        this.memberCacheMode = memberCacheMode;
+        this.memberCacheSize = memberCacheSize;
+        this.roleHolders = memberCacheMode.equals("role-holders")
+                ? new RoleHolderIndex(allowedGuildId, allowedRoleId, logger)
+                : null;
+
+        this.verifications = metrics.counter("verifications_total", "Players linked with !verify.");
+        this.invalidCodes = metrics.counter("verify_invalid_codes_total", "!verify attempts with an unknown or expired code.");
+        this.rateLimitedAttempts = metrics.counter("verify_rate_limited_total", "!verify attempts rejected because the Discord user is blocked.");
+        this.memberLookupTimes = metrics.histogram("member_lookup_seconds", "Latency of retrieveMemberById during !verify.");
+        this.persistTimes = metrics.histogram("verify_persist_seconds", "Time from storing a link until it is persisted.");
+        this.commandTimes = metrics.histogram("command_seconds",
+                "Time from receiving a DM until its command has run, including time queued behind other commands.");
+        this.gatewayEvents = metrics.counter("gateway_events_total",
+                "Events received from the Discord gateway; its rate shows the load of the subscribed intents.");
+        metrics.gauge("command_busy_users", "Discord users with commands queued or running.", commands::getBusyUsers);
+    }
+
+    /**
+     * Connect the bot in the background, so plugin loading and the cluster election do not wait for the
+     * gateway handshake. Called when this proxy becomes the cluster leader.
+     */
+    public synchronized void start() {
+        int startGeneration = ++generation;
+        state = ReadyState.STARTING;
+        if (ready.isDone()) {
+            ready = new CompletableFuture<>();
+        }
+        Thread startup = new Thread(() -> connect(startGeneration), "DiscordAuth-BotStartup");
+        startup.setDaemon(true);
+        startup.start();
+    }
 
+    private void connect(int startGeneration) {
+        JDA client = null;
         try {
+            long loginStart = System.nanoTime();
             // Initialize Discord bot with required gateway intents
-            jda = JDABuilder.createDefault(token,
-                            GatewayIntent.GUILD_MEMBERS,
-                            GatewayIntent.GUILD_MESSAGES,
-                            GatewayIntent.MESSAGE_CONTENT,
-                            GatewayIntent.DIRECT_MESSAGES)
+            JDABuilder builder = JDABuilder.createDefault(token, gatewayIntents())
                     .addEventListeners(this)
-                    .build();
-            jda.awaitReady();
-            logger.info("Discord bot started successfully!");
+                    .setMemberCachePolicy(memberCachePolicy())
+                    .setChunkingFilter(roleHolders != null ? ChunkingFilter.include(allowedGuildId) : ChunkingFilter.NONE);
+            if (eventPoolSize > 0) {
+                builder.setEventPool(newPool("Event", eventPoolSize), true);
+            }
+            if (callbackPoolSize > 0) {
+                builder.setCallbackPool(newPool("Callback", callbackPoolSize), true);
+            }
+            client = transport.connect(builder, this);
+            synchronized (this) {
+                if (generation != startGeneration) {
+                    // Stopped before the connection was up
+                    client.shutdownNow();
+                    return;
+                }
+                this.jda = client;
+                // Registered under the lock so a concurrent setRoleId swaps the listener it sees here
+                if (roleHolders != null) {
+                    client.addEventListener(roleHolders);
+                }
+            }
+            client.awaitStatus(JDA.Status.LOADING_SUBSYSTEMS);
+            timings.record("JDA login", loginStart);
+
+            long guildStart = System.nanoTime();
+            client.awaitReady();
+            timings.record("guild ready", guildStart);
+
+            Guild guild = client.getGuildById(allowedGuildId);
+            RoleHolderIndex index = roleHolders;
+            if (index != null && guild != null) {
+                index.load(guild);
+            }
+            if (guild != null) {
+                registerCommands(guild);
+            }
+
+            synchronized (this) {
+                if (generation != startGeneration) {
+                    // Stopped while connecting; stop() already shut the connection down
+                    return;
+                }
+                state = ReadyState.READY;
+                ready.complete(null);
+            }
+            cluster.botStarted();
+            logger.info("Discord bot started successfully! Startup timings: {}", timings);
         } catch (Exception e) {
-            throw new RuntimeException("Failed to start Discord bot", e);
+            synchronized (this) {
+                if (generation == startGeneration) {
+                    if (client != null) {
+                        client.shutdownNow();
+                        jda = null;
+                    }
+                    state = ReadyState.FAILED;
+                    ready.completeExceptionally(e);
+                    logger.error("Failed to start Discord bot", e);
+                }
+            }
         }
     }
 
     /**
-     * Generate a 6-digit verification code for a Minecraft player.
+     * Only what the configured modes use: member events keep the role-holder index and the lru member cache
+     * current, and DMs carry the ! commands. Discord always includes the content of DMs to the bot, so the privileged message
+     * content intent is never needed; slash commands and modals arrive as interactions, which need no intent.
+     */
+    private EnumSet<GatewayIntent> gatewayIntents() {
+        EnumSet<GatewayIntent> intents = EnumSet.noneOf(GatewayIntent.class);
+        if (hasMemberEvents()) {
+            intents.add(GatewayIntent.GUILD_MEMBERS);
+        }
+        if (dmCommands) {
+            intents.add(GatewayIntent.DIRECT_MESSAGES);
+        }
+        return intents;
+    }
+
+    // Whether cached members receive role updates, so that JDA's member cache may answer role checks
+    private boolean hasMemberEvents() {
+        return !memberCacheMode.equals("none");
+    }
+
+    private static ExecutorService newPool(String name, int size) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(size, r -> {
+            Thread thread = new Thread(r, "DiscordAuth-" + name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private MemberCachePolicy memberCachePolicy() {
+        switch (memberCacheMode) {
+            case "role-holders":
+                // Keep only members of our guild that hold the required role
+                return member -> member.getGuild().getIdLong() == allowedGuildId && hasRequiredRole(member);
+            case "lru":
+                return MemberCachePolicy.lru(memberCacheSize);
+            default:
+                return MemberCachePolicy.NONE;
+        }
+    }
+
+    private boolean hasRequiredRole(Member member) {
+        return hasRole(member, allowedRoleId);
+    }
+
+    static boolean hasRole(Member member, long roleId) {
+        for (Role role : member.getRoles()) {
+            if (role.getIdLong() == roleId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public ReadyState getState() {
+        return state;
+    }
+
+    public boolean isReady() {
+        return state == ReadyState.READY;
+    }
+
+    /**
+     * Returns a future that completes once the bot is connected and the guild cache is loaded.
+     */
+    public CompletableFuture<Void> whenReady() {
+        return ready.copy();
+    }
+
+    /**
+     * Disconnect the bot from Discord. Called on shutdown and when this proxy loses the cluster lease.
+     */
+    public void stop() {
+        JDA current;
+        synchronized (this) {
+            generation++;
+            state = ReadyState.STOPPED;
+            current = jda;
+            jda = null;
+        }
+        cluster.botStopped();
+        rest.clear();
+        if (current != null) {
+            current.shutdown();
+        }
+    }
+
+    /**
+     * Require a different role from now on, keeping the Discord session. In role-holders mode the index is
+     * rebuilt for the new role; until it has loaded, role checks use REST lookups.
+     */
+    public synchronized void setRoleId(long roleId) {
+        this.allowedRoleId = roleId;
+        RoleHolderIndex previous = roleHolders;
+        if (previous == null) {
+            return;
+        }
+
+        RoleHolderIndex index = new RoleHolderIndex(allowedGuildId, roleId, logger);
+        this.roleHolders = index;
+        JDA current = jda;
+        if (current != null) {
+            current.removeEventListener(previous);
+            current.addEventListener(index);
+            Guild guild = current.getGuildById(allowedGuildId);
+            if (guild != null) {
+                index.load(guild);
+            }
+        }
+    }
+
+    /**
+     * Generate a verification code for a Minecraft player, replacing any code it already had.
+     *
+     * @return the code, or null if no free code was found
      */
     public String generateVerificationCode(UUID playerId) {
-        String code = String.format("%06d", ThreadLocalRandom.current().nextInt(0, 1000000));
-        pendingCodes.put(playerId, code);
-        codeToPlayerId.put(code, playerId);
-        return code;
+        return codes.allocate(playerId);
     }
 
     /**
@@ -88,117 +371,378 @@ public class DiscordService extends ListenerAdapter {
      * Remove a pending verification code for a player.
      */
     public void removePendingCode(UUID playerId) {
-        String code = pendingCodes.remove(playerId);
-        if (code != null) {
-            codeToPlayerId.remove(code);
-        }
+        codes.release(playerId);
     }
 
     @Override
     public void onMessageReceived(MessageReceivedEvent event) {
         // Only handle private messages (DMs)
-        if (!event.isFromType(ChannelType.PRIVATE)) return;
+        if (!dmCommands || !event.isFromType(ChannelType.PRIVATE)) return;
 
         User user = event.getAuthor();
         if (user.isBot()) return; // Ignore bot messages
 
-        Guild guild = jda.getGuildById(allowedGuildId);
+        // Storage writes and lookups may block, so commands leave the event thread
+        long received = commandTimes.start();
+        commands.executeAsync(user.getIdLong(), () -> handleMessage(event, user)
+                .whenComplete((ignored, error) -> commandTimes.recordSince(received)));
+    }
+
+    /**
+     * Handle a DM command.
+     *
+     * @return completes once the command has finished, including any REST lookup or storage write it waits on
+     */
+    private CompletableFuture<Void> handleMessage(MessageReceivedEvent event, User user) {
+        Guild guild = event.getJDA().getGuildById(allowedGuildId);
         String content = event.getMessage().getContentRaw().trim();
 
         if (guild == null) {
-            event.getChannel().sendMessage("❌ Target guild not found.").queue();
-            return;
+            reply(event, "❌ Target guild not found.", RestDispatcher.Priority.VERIFY);
+            return DONE;
         }
 
         // Admin command to delete verification
         if (content.startsWith("!delete ")) {
             if (user.getIdLong() != adminId) {
-                event.getChannel().sendMessage("❌ You do not have permission.").queue();
-                return;
+                reply(event, "❌ You do not have permission.", RestDispatcher.Priority.ADMIN);
+                return DONE;
             }
 
-            String discordId = content.substring(8).trim();
-            UUID playerId = verifiedStorage.getPlayerIdByDiscordId(discordId);
+            deleteLink(guild, content.substring(8).trim(), message -> reply(event, message, RestDispatcher.Priority.ADMIN));
+            return DONE;
+        }
 
-            if (playerId != null) {
-                // Remove role from Discord member
-                guild.retrieveMemberById(discordId).queue(member -> {
-                    Role role = guild.getRoleById(allowedRoleId);
-                    guild.removeRoleFromMember(member, role).queue();
-                });
+        // Admin bulk commands: !import <file>, !export <file>, !reconcile [remove]
+        if (content.startsWith("!import ") || content.startsWith("!export ") || content.startsWith("!reconcile")) {
+            if (user.getIdLong() != adminId) {
+                reply(event, "❌ You do not have permission.", RestDispatcher.Priority.ADMIN);
+                return DONE;
+            }
+            int space = content.indexOf(' ');
+            String name = space < 0 ? content.substring(1) : content.substring(1, space);
+            String argument = space < 0 ? "" : content.substring(space + 1).trim();
+            runBulkCommand(name, argument, guild, message -> reply(event, message, RestDispatcher.Priority.ADMIN));
+            return DONE;
+        }
 
-                // Remove verification from storage
-                verifiedStorage.remove(playerId);
+        // Only handle verification commands
+        if (!content.startsWith("!verify")) return DONE;
 
-                // Disconnect player if online
-                server.getPlayer(playerId).ifPresent(p ->
-                        p.disconnect(Component.text("Your Discord verification has been removed."))
-                );
+        Consumer<String> reply = message -> reply(event, message, RestDispatcher.Priority.VERIFY);
+        String[] args = content.split(" ");
+        if (args.length != 2) {
+            reply.accept("❌ Please enter the code correctly.");
+            return DONE;
+        }
 
-                event.getChannel().sendMessage("✅ Verification removed: " + discordId).queue();
-                logger.info("Admin removed verification for DiscordID: " + discordId);
+        return verify(user, null, guild, args[1], reply);
+    }
 
-                removePendingCode(playerId);
+    /**
+     * Check a code sent by a Discord user and link the user to the player holding it.
+     *
+     * @param member the user as a member of the guild if the event carried it, otherwise it is looked up
+     * @return completes once the link is stored or the attempt has been turned down
+     */
+    private CompletableFuture<Void> verify(User user, Member member, Guild guild, String code, Consumer<String> reply) {
+        // Stop users who keep guessing codes before looking the code up
+        long now = System.currentTimeMillis();
+        if (verifyAttempts.isBlocked(user.getIdLong(), now)) {
+            rateLimitedAttempts.increment();
+            reply.accept("❌ Too many invalid codes. Please try again later.");
+            return DONE;
+        }
 
-            } else {
-                event.getChannel().sendMessage("❌ Not registered: " + discordId).queue();
+        // Find the player ID corresponding to this code; in a cluster it may have been issued by another proxy
+        UUID playerId = codes.lookup(code);
+
+        if (playerId == null) {
+            invalidCodes.increment();
+            if (verifyAttempts.recordFailure(user.getIdLong(), now)) {
+                audit.record(AuditLog.Type.VERIFY_BLOCKED, null, user.getIdLong(), null, 0);
+                logger.info("Discord user {} has been blocked from !verify after repeated invalid codes.", user.getName());
             }
-            return;
+            reply.accept("❌ Invalid or expired code.");
+            return DONE;
         }
 
-        // Only handle verification commands
-        if (!content.startsWith("!verify")) return;
+        // Interactions carry the member, so the role check needs no REST call
+        if (member != null) {
+            return verifyMember(member, playerId, code, user, reply);
+        }
 
-        String[] args = content.split(" ");
-        if (args.length != 2) {
-            event.getChannel().sendMessage("❌ Please enter the code correctly.").queue();
+        // With the role-holder index the role check needs no REST call either
+        if (roleHolders != null && roleHolders.isLoaded()) {
+            if (roleHolders.contains(user.getIdLong())) {
+                return completeVerification(playerId, code, user, reply);
+            }
+            reply.accept("❌ Required role not assigned.");
+            return DONE;
+        }
+
+        // Retrieve the member and proceed with verification; the JDA cache only answers while it gets member events.
+        // The rest runs on the command executor rather than JDA's callback thread, and the user's queue waits for it
+        long lookupStart = memberLookupTimes.start();
+        return rest.retrieveMember(guild, user.getId(), hasMemberEvents(), RestDispatcher.Priority.VERIFY)
+                .handleAsync((retrieved, error) -> {
+                    memberLookupTimes.recordSince(lookupStart);
+                    if (error != null) {
+                        reply.accept("❌ You must be a member of the Discord server.");
+                        logger.warn("Failed to retrieve member for user {}: {}", user.getName(), error.getMessage());
+                        return DONE;
+                    }
+                    return verifyMember(retrieved, playerId, code, user, reply);
+                }, commands.getExecutor())
+                .thenCompose(next -> next);
+    }
+
+    @Override
+    public void onSlashCommandInteraction(SlashCommandInteractionEvent event) {
+        if (!slashCommands || event.getGuild() == null || event.getGuild().getIdLong() != allowedGuildId) return;
+
+        User user = event.getUser();
+        switch (event.getName()) {
+            case "verify":
+                OptionMapping code = event.getOption("code");
+                if (code == null) {
+                    // Without the option, ask for the code in a form
+                    event.replyModal(verifyModal()).queue();
+                    return;
+                }
+                // Acknowledge within Discord's three seconds, before the command waits behind anything
+                event.deferReply(true).queue();
+                InteractionHook hook = event.getHook();
+                commands.executeAsync(user.getIdLong(), () -> verify(user, event.getMember(), event.getGuild(),
+                        code.getAsString().trim(), message -> rest.followUp(hook, message, RestDispatcher.Priority.VERIFY)));
+                break;
+            case "unlink":
+                event.deferReply(true).queue();
+                InteractionHook unlinkHook = event.getHook();
+                commands.execute(user.getIdLong(), () -> unlink(user,
+                        message -> rest.followUp(unlinkHook, message, RestDispatcher.Priority.VERIFY)));
+                break;
+            case "discordauth":
+                event.deferReply(true).queue();
+                InteractionHook adminHook = event.getHook();
+                Consumer<String> adminReply = message -> rest.followUp(adminHook, message, RestDispatcher.Priority.ADMIN);
+                if (user.getIdLong() != adminId) {
+                    adminReply.accept("❌ You do not have permission.");
+                    return;
+                }
+                commands.execute(user.getIdLong(), () -> handleAdminCommand(event, adminReply));
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public void onModalInteraction(ModalInteractionEvent event) {
+        if (!slashCommands || !event.getModalId().equals(VERIFY_MODAL) || event.getGuild() == null) return;
+
+        ModalMapping code = event.getValue("code");
+        if (code == null) return;
+
+        event.deferReply(true).queue();
+        User user = event.getUser();
+        InteractionHook hook = event.getHook();
+        commands.executeAsync(user.getIdLong(), () -> verify(user, event.getMember(), event.getGuild(),
+                code.getAsString().trim(), message -> rest.followUp(hook, message, RestDispatcher.Priority.VERIFY)));
+    }
+
+    private static Modal verifyModal() {
+        TextInput input = TextInput.create("code", "Verification code", TextInputStyle.SHORT)
+                .setPlaceholder("The code shown in Minecraft")
+                .setRequiredRange(4, 32)
+                .build();
+        return Modal.create(VERIFY_MODAL, "Link your Minecraft account").addActionRow(input).build();
+    }
+
+    /**
+     * The admin's DM commands as subcommands of {@code /discordauth}, for modes in which the bot reads no DMs.
+     */
+    private void handleAdminCommand(SlashCommandInteractionEvent event, Consumer<String> reply) {
+        String subcommand = event.getSubcommandName();
+        if (subcommand == null) {
             return;
         }
+        switch (subcommand) {
+            case "delete":
+                deleteLink(event.getGuild(), event.getOption("discord_id", "", OptionMapping::getAsString).trim(), reply);
+                break;
+            case "import":
+            case "export":
+                runBulkCommand(subcommand, event.getOption("file", "", OptionMapping::getAsString).trim(),
+                        event.getGuild(), reply);
+                break;
+            case "reconcile":
+                boolean remove = event.getOption("remove", false, OptionMapping::getAsBoolean);
+                runBulkCommand(subcommand, remove ? "remove" : "", event.getGuild(), reply);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Remove a link on the admin's behalf; the player is disconnected and loses the role.
+     */
+    private void deleteLink(Guild guild, String discordId, Consumer<String> reply) {
+        UUID playerId = verifiedStorage.getPlayerIdByDiscordId(discordId);
+
+        if (playerId != null) {
+            // Remove role from Discord member; nobody waits for this, so it yields to replies
+            removeRole(guild, discordId);
 
-        String code = args[1];
+            // Remove verification from storage
+            verifiedStorage.remove(playerId);
 
-        // Find the player ID corresponding to this code
-        UUID playerId = codeToPlayerId.get(code);
+            // Every proxy disconnects the player if it is online there
+            cluster.publishRevoked(playerId);
+            audit.record(AuditLog.Type.DELETED, playerId, parseId(discordId), null, 0);
 
+            reply.accept("✅ Verification removed: " + discordId);
+            logger.info("Admin removed verification for DiscordID: {}", discordId);
+
+        } else {
+            reply.accept("❌ Not registered: " + discordId);
+        }
+    }
+
+    /**
+     * Remove the link of the Discord user who asked for it; the player is disconnected wherever they are online.
+     */
+    private void unlink(User user, Consumer<String> reply) {
+        UUID playerId = verifiedStorage.getPlayerIdByDiscordId(user.getId());
         if (playerId == null) {
-            event.getChannel().sendMessage("❌ Invalid or expired code.").queue();
+            reply.accept("❌ Your Discord account is not linked to a Minecraft account.");
             return;
         }
 
-        // Retrieve the member and proceed with verification
-        guild.retrieveMemberById(user.getId()).queue(
-                member -> verifyMember(member, playerId, event, user),
-                error -> {
-                    event.getChannel().sendMessage("❌ You must be a member of the Discord server.").queue();
-                    logger.warn("Failed to retrieve member for user " + user.getName() + ": " + error.getMessage());
-                }
-        );
+        verifiedStorage.remove(playerId);
+        cluster.publishRevoked(playerId);
+        audit.record(AuditLog.Type.UNLINKED, playerId, user.getIdLong(), null, 0);
+        reply.accept("✅ Your Minecraft account has been unlinked.");
+        logger.info("Discord user {} unlinked player {}", user.getName(), playerId);
     }
 
     /**
-     * Verify a Discord member and link to Minecraft player.
+     * Register the slash commands in the guild, or remove them when the mode does not use them. The admin
+     * command is hidden from members without the Administrator permission, and only answers {@code adminId}.
      */
-    private void verifyMember(Member member, UUID playerId, MessageReceivedEvent event, User user) {
-        boolean hasRole = member.getRoles().stream()
-                .mapToLong(Role::getIdLong)
-                .anyMatch(id -> id == allowedRoleId);
+    private void registerCommands(Guild guild) {
+        List<SlashCommandData> data = slashCommands
+                ? List.of(Commands.slash("verify", "Link your Minecraft account")
+                        .addOption(OptionType.STRING, "code", "The code shown in Minecraft", false),
+                        Commands.slash("unlink", "Remove the link to your Minecraft account"),
+                        Commands.slash("discordauth", "Manage Minecraft account links")
+                                .setDefaultPermissions(DefaultMemberPermissions.DISABLED)
+                                .addSubcommands(
+                                        new SubcommandData("delete", "Remove a user's link")
+                                                .addOption(OptionType.STRING, "discord_id", "Discord ID of the user", true),
+                                        new SubcommandData("import", "Import links from a file")
+                                                .addOption(OptionType.STRING, "file", "File inside plugins/discordauth/", true),
+                                        new SubcommandData("export", "Export links to a file")
+                                                .addOption(OptionType.STRING, "file", "File inside plugins/discordauth/", true),
+                                        new SubcommandData("reconcile", "Find links of users who left or lost the role")
+                                                .addOption(OptionType.BOOLEAN, "remove", "Also remove those links", false)))
+                : List.of();
+        guild.updateCommands().addCommands(data).queue(
+                registered -> logger.info("Registered {} slash command(s) in guild {}.", registered.size(), guild.getName()),
+                error -> logger.warn("Failed to register slash commands: {}", error.getMessage()));
+    }
+
+    @Override
+    public void onGenericEvent(GenericEvent event) {
+        gatewayEvents.increment();
+    }
+
+    // Discord IDs are kept as strings in storage; the audit log records them as numbers
+    private static long parseId(String discordId) {
+        try {
+            return Long.parseLong(discordId);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void reply(MessageReceivedEvent event, String message, RestDispatcher.Priority priority) {
+        rest.reply(event.getChannel(), message, priority);
+    }
 
-        if (!hasRole) {
-            event.getChannel().sendMessage("❌ Required role not assigned.").queue();
+    private void removeRole(Guild guild, String discordId) {
+        Role role = guild.getRoleById(allowedRoleId);
+        if (role == null) {
             return;
         }
+        rest.retrieveMember(guild, discordId, hasMemberEvents(), RestDispatcher.Priority.HOUSEKEEPING)
+                .thenCompose(member -> rest.submit("role:" + guild.getId(), RestDispatcher.RouteKind.ROLE,
+                        RestDispatcher.Priority.HOUSEKEEPING, () -> guild.removeRoleFromMember(member, role)))
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        logger.warn("Failed to remove the role from Discord user {}: {}", discordId, error.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * Start a bulk job: {@code import} or {@code export} with a file, or {@code reconcile} with {@code remove}
+     * or nothing.
+     */
+    private void runBulkCommand(String name, String argument, Guild guild, Consumer<String> reply) {
+        boolean started;
+        if (name.equals("import")) {
+            started = bulkOperations.importLinks(argument, reply);
+        } else if (name.equals("export")) {
+            started = bulkOperations.exportLinks(argument, reply);
+        } else {
+            boolean remove = argument.equals("remove");
+            RoleHolderIndex index = roleHolders != null && roleHolders.isLoaded() ? roleHolders : null;
+            started = bulkOperations.reconcile(guild, allowedRoleId, index, remove, reply);
+        }
+
+        if (started) {
+            reply.accept("⏳ Started. You will get a message when it finishes.");
+        } else {
+            reply.accept("❌ Another bulk job is still running.");
+        }
+    }
+
+    /**
+     * Verify a Discord member and link to Minecraft player.
+     */
+    private CompletableFuture<Void> verifyMember(Member member, UUID playerId, String code, User user, Consumer<String> reply) {
+        if (!hasRequiredRole(member)) {
+            reply.accept("❌ Required role not assigned.");
+            return DONE;
+        }
+
+        return completeVerification(playerId, code, user, reply);
+    }
 
-        // Add verified player to storage
-        verifiedStorage.add(playerId, user.getId());
-        removePendingCode(playerId);
+    /**
+     * Link a Discord user who passed the role check to the Minecraft player. The code is used up and the
+     * player released only once the link is stored; if storing fails, the code and the player's timeout stay.
+     */
+    private CompletableFuture<Void> completeVerification(UUID playerId, String code, User user, Consumer<String> reply) {
+        long persistStart = persistTimes.start();
+        return verifiedStorage.add(playerId, user.getId()).whenComplete((ignored, error) -> {
+            persistTimes.recordSince(persistStart);
+            if (error != null) {
+                logger.error("Failed to persist verification of player {}", playerId, error);
+                reply.accept("❌ Your account could not be linked. Please try again.");
+                return;
+            }
 
-        // Notify Minecraft player
-        server.getPlayer(playerId).ifPresent(p ->
-                p.sendMessage(Component.text("✅ Discord verification successful!"))
-        );
+            verifications.increment();
+            codes.consume(code, playerId);
+            audit.record(AuditLog.Type.VERIFIED, playerId, user.getIdLong(), null, 0);
 
-        // Notify Discord user
-        event.getChannel().sendMessage("✅ Verification successful! Linked to Minecraft account.").queue();
-        logger.info("Player " + playerId + " verified via Discord user " + user.getName());
+            // The proxy the player is connected to cancels its timeout and notifies the player
+            cluster.publishVerified(playerId);
+            reply.accept("✅ Verification successful! Linked to Minecraft account.");
+            logger.info("Player {} verified via Discord user {}", playerId, user.getName());
+        }).handle((ignored, error) -> null);
     }
 }
@@ -0,0 +1,114 @@
+package com.braur0.discordauth;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a callback when a watched file is created, changed or replaced.
+ * <p>
+ * A {@link WatchService} watches the parent directory of each file, so editors that save by writing a new
+ * file and renaming it over the old one are noticed too. Bursts of events (an editor writing in chunks, a
+ * large file being copied) are collapsed: a callback runs once the file has been quiet for the settle time.
+ * Callbacks run one at a time on the watcher thread, never on a login or event thread.
+ */
+public class FileWatcher {
+
+    private static final long SETTLE_MILLIS = 250;
+
+    private final Logger logger;
+    private final WatchService watchService;
+    private final Map<Path, Runnable> callbacks = new ConcurrentHashMap<>();
+    private final Map<Path, WatchKey> directories = new ConcurrentHashMap<>();
+    private final Thread thread;
+
+    public FileWatcher(Logger logger) throws IOException {
+        this.logger = logger;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.thread = new Thread(this::run, "DiscordAuth-FileWatcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Run the callback whenever the file changes, replacing any callback registered for it before.
+     */
+    public synchronized void watch(Path file, Runnable onChange) throws IOException {
+        Path absolute = file.toAbsolutePath().normalize();
+        Path directory = absolute.getParent();
+        if (!directories.containsKey(directory)) {
+            directories.put(directory, directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY));
+        }
+        callbacks.put(absolute, onChange);
+    }
+
+    /**
+     * Stop watching the file. Its directory stays registered, which costs nothing while no callback matches.
+     */
+    public void unwatch(Path file) {
+        callbacks.remove(file.toAbsolutePath().normalize());
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Set<Path> changed = new LinkedHashSet<>();
+                collect(watchService.take(), changed);
+                // Keep collecting until the files have been quiet for the settle time
+                WatchKey next;
+                while ((next = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    collect(next, changed);
+                }
+
+                for (Path file : changed) {
+                    Runnable callback = callbacks.get(file);
+                    if (callback == null) {
+                        continue;
+                    }
+                    try {
+                        callback.run();
+                    } catch (RuntimeException e) {
+                        logger.error("Failed to reload {}", file, e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    private void collect(WatchKey key, Set<Path> changed) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost; check every file in this directory
+                callbacks.keySet().stream().filter(file -> file.getParent().equals(directory)).forEach(changed::add);
+            } else {
+                changed.add(directory.resolve((Path) event.context()));
+            }
+        }
+        key.reset();
+    }
+
+    public void stop() {
+        thread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close the file watcher", e);
+        }
+    }
+}
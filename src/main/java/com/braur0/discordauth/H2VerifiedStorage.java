@@ -0,0 +1,215 @@
+package com.braur0.discordauth;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.slf4j.Logger;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * Embedded H2 backed {@link VerifiedStorage}.
+ * <p>
+ * Links live in an indexed table on disk, so lookups are point queries instead of
+ * a full in-memory copy. Recently used links are kept in a bounded cache.
+ */
+public class H2VerifiedStorage implements VerifiedStorage {
+
+    private static final String MERGE =
+            "MERGE INTO verified (uuid, discord_id, seq) KEY (uuid) VALUES (?, ?, NEXT VALUE FOR verified_seq)";
+
+    private final Logger logger;
+    private final JdbcConnectionPool pool;
+
+    // Hot entries: UUID -> Discord ID
+    private final LruCache<UUID, String> cache;
+    // Bumped while holding the cache's lock after each committed write. A lookup only caches the row it read
+    // if no write committed during its query, so a removed or replaced link cannot be put back afterwards.
+    private volatile long writes;
+
+    public H2VerifiedStorage(Path file, Logger logger, int cacheSize) {
+        this.logger = logger;
+        this.cache = new LruCache<>(cacheSize);
+        this.pool = JdbcConnectionPool.create("jdbc:h2:file:" + file.toAbsolutePath(), "sa", "");
+
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS verified ("
+                    + "uuid UUID PRIMARY KEY, "
+                    + "discord_id VARCHAR(32) NOT NULL)");
+            // Each write takes the next sequence number, so the newest link of a Discord user can be found
+            statement.execute("CREATE SEQUENCE IF NOT EXISTS verified_seq");
+            statement.execute("ALTER TABLE verified ADD COLUMN IF NOT EXISTS seq BIGINT NOT NULL DEFAULT 0");
+            statement.execute("DROP INDEX IF EXISTS verified_discord_id");
+            statement.execute("CREATE INDEX IF NOT EXISTS verified_discord_id_seq ON verified(discord_id, seq)");
+        } catch (SQLException e) {
+            pool.dispose();
+            throw new RuntimeException("Failed to open verified player database " + file, e);
+        }
+    }
+
+    @Override
+    public boolean isVerified(UUID uuid) {
+        return getDiscordId(uuid) != null;
+    }
+
+    /**
+     * Add a verified player. The row is committed before the returned future completes.
+     */
+    @Override
+    public CompletableFuture<Void> add(UUID uuid, String discordId) {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(MERGE)) {
+            statement.setObject(1, uuid);
+            statement.setString(2, discordId);
+            statement.executeUpdate();
+            committed(uuid, discordId);
+            return CompletableFuture.completedFuture(null);
+        } catch (SQLException e) {
+            logger.error("Failed to store verification of player {}", uuid, e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Add many verified players in one transaction.
+     */
+    @Override
+    public CompletableFuture<Void> addAll(Map<UUID, String> links) {
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(MERGE)) {
+                for (Map.Entry<UUID, String> link : links.entrySet()) {
+                    statement.setObject(1, link.getKey());
+                    statement.setString(2, link.getValue());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+            synchronized (cache) {
+                writes++;
+                links.forEach(cache::put);
+            }
+            return CompletableFuture.completedFuture(null);
+        } catch (SQLException e) {
+            logger.error("Failed to store {} verified players", links.size(), e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Remove a verified player. The row is deleted before the returned future completes, and the cached
+     * entry is dropped once the delete has committed.
+     */
+    @Override
+    public CompletableFuture<Void> remove(UUID uuid) {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement("DELETE FROM verified WHERE uuid = ?")) {
+            statement.setObject(1, uuid);
+            statement.executeUpdate();
+            committed(uuid, null);
+            return CompletableFuture.completedFuture(null);
+        } catch (SQLException e) {
+            logger.error("Failed to remove verification of player {}", uuid, e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Update the cache after a committed write; a null Discord ID removes the entry.
+     */
+    private void committed(UUID uuid, String discordId) {
+        synchronized (cache) {
+            writes++;
+            if (discordId == null) {
+                cache.remove(uuid);
+            } else {
+                cache.put(uuid, discordId);
+            }
+        }
+    }
+
+    @Override
+    public String getDiscordId(UUID uuid) {
+        String cached = cache.get(uuid);
+        if (cached != null) {
+            return cached;
+        }
+
+        long seen = writes;
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT discord_id FROM verified WHERE uuid = ?")) {
+            statement.setObject(1, uuid);
+            try (ResultSet result = statement.executeQuery()) {
+                if (!result.next()) {
+                    return null;
+                }
+                String discordId = result.getString(1);
+                synchronized (cache) {
+                    if (writes == seen) {
+                        cache.put(uuid, discordId);
+                    }
+                }
+                return discordId;
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to look up verification of player {}", uuid, e);
+            return null;
+        }
+    }
+
+    /**
+     * The player most recently linked to the Discord user, as with the JSON backend.
+     */
+    @Override
+    public UUID getPlayerIdByDiscordId(String discordId) {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT uuid FROM verified WHERE discord_id = ? ORDER BY seq DESC, uuid LIMIT 1")) {
+            statement.setString(1, discordId);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() ? result.getObject(1, UUID.class) : null;
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to look up player for Discord ID {}", discordId, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<UUID, String> consumer) {
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.setFetchSize(1000);
+            try (ResultSet result = statement.executeQuery("SELECT uuid, discord_id FROM verified")) {
+                while (result.next()) {
+                    consumer.accept(result.getObject(1, UUID.class), result.getString(2));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to read verified players", e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> flush() {
+        // Every write is committed before its future completes
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void close() {
+        pool.dispose();
+    }
+}
@@ -0,0 +1,176 @@
+package com.braur0.discordauth;
+
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import net.kyori.adventure.text.Component;
+import org.slf4j.Logger;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps unverified players on a lightweight holding server (a limbo) so they never reach a real backend.
+ * <p>
+ * A held player's initial connection is sent to the holding server instead of the server Velocity picked, and
+ * every later switch to another server is refused. The picked server is remembered, and the player is sent
+ * there once they verify. Held players are reminded of their code in the action bar.
+ */
+public class HoldingServer {
+
+    private static final class Hold {
+        // Where the player was headed; null until Velocity picks the initial server
+        volatile RegisteredServer target;
+        volatile Component reminder;
+    }
+
+    private final ProxyServer server;
+    private final String name;
+    private final Logger logger;
+    private final Map<UUID, Hold> held = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reminders;
+    private volatile boolean reportedMissing;
+
+    /**
+     * @param reminderSeconds interval of the action-bar reminder; 0 shows none
+     */
+    public HoldingServer(ProxyServer server, String name, long reminderSeconds, Logger logger) {
+        this.server = server;
+        this.name = name;
+        this.logger = logger;
+        if (reminderSeconds > 0) {
+            this.reminders = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "DiscordAuth-Limbo");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reminders.scheduleAtFixedRate(this::remind, reminderSeconds, reminderSeconds, TimeUnit.SECONDS);
+        } else {
+            this.reminders = null;
+        }
+    }
+
+    /**
+     * Keep the player off the backends until {@link #release} or {@link #forget} is called.
+     */
+    public void hold(UUID playerId) {
+        held.putIfAbsent(playerId, new Hold());
+    }
+
+    public boolean isHeld(UUID playerId) {
+        return held.containsKey(playerId);
+    }
+
+    /**
+     * The holding server, or empty if it is not registered with Velocity; held players are then let through
+     * as if no holding server were configured.
+     */
+    public Optional<RegisteredServer> get() {
+        Optional<RegisteredServer> holding = server.getServer(name);
+        if (holding.isEmpty() && !reportedMissing) {
+            reportedMissing = true;
+            logger.warn("Holding server '{}' is not registered in velocity.toml; unverified players join the backends.", name);
+        }
+        return holding;
+    }
+
+    public boolean isHoldingServer(RegisteredServer target) {
+        return target.getServerInfo().getName().equalsIgnoreCase(name);
+    }
+
+    /**
+     * Remember where a held player wanted to go; the last request wins.
+     */
+    public void setTarget(UUID playerId, RegisteredServer target) {
+        Hold hold = held.get(playerId);
+        if (hold != null && target != null && !isHoldingServer(target)) {
+            hold.target = target;
+        }
+    }
+
+    /**
+     * Set the action bar shown to a held player until they verify.
+     */
+    public void setReminder(UUID playerId, Component reminder) {
+        Hold hold = held.get(playerId);
+        if (hold != null) {
+            hold.reminder = reminder;
+        }
+    }
+
+    /**
+     * Stop holding the player and send them on to the server they were headed for.
+     */
+    public void release(Player player) {
+        Hold hold = held.remove(player.getUniqueId());
+        if (hold == null) {
+            return;
+        }
+
+        boolean onHoldingServer = player.getCurrentServer()
+                .map(connection -> isHoldingServer(connection.getServer()))
+                .orElse(false);
+        if (!onHoldingServer) {
+            // Still choosing the initial server; it is picked normally now that the hold is gone
+            return;
+        }
+
+        RegisteredServer target = hold.target != null ? hold.target : firstServer();
+        if (target == null) {
+            logger.warn("No server to send {} to after verification.", player.getUsername());
+            return;
+        }
+        player.createConnectionRequest(target).connect().whenComplete((result, error) -> {
+            if (error != null || !result.isSuccessful()) {
+                logger.warn("Failed to send {} to {} after verification.", player.getUsername(),
+                        target.getServerInfo().getName());
+            }
+        });
+    }
+
+    // Velocity's first server in the try order, other than the holding server
+    private RegisteredServer firstServer() {
+        for (String candidate : server.getConfiguration().getAttemptConnectionOrder()) {
+            if (candidate.equalsIgnoreCase(name)) {
+                continue;
+            }
+            Optional<RegisteredServer> registered = server.getServer(candidate);
+            if (registered.isPresent()) {
+                return registered.get();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stop holding the player without moving them, when they leave or lose their link.
+     */
+    public void forget(UUID playerId) {
+        held.remove(playerId);
+    }
+
+    // Show every held player their reminder
+    private void remind() {
+        for (Map.Entry<UUID, Hold> entry : held.entrySet()) {
+            Component reminder = entry.getValue().reminder;
+            if (reminder != null) {
+                server.getPlayer(entry.getKey()).ifPresent(player -> player.sendActionBar(reminder));
+            }
+        }
+    }
+
+    public int size() {
+        return held.size();
+    }
+
+    public void stop() {
+        if (reminders != null) {
+            reminders.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.braur0.discordauth;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * In-process {@link ClusterBackend}.
+ * <p>
+ * A standalone proxy uses it as its own single-member cluster. Several {@link Cluster}s created on one
+ * instance behave like proxies sharing a Redis server, which makes it a stand-in for tests and load
+ * simulations. Messages are delivered synchronously on the publishing thread.
+ */
+public class InMemoryClusterBackend implements ClusterBackend {
+
+    private record Entry(String value, long expiresAt) {}
+
+    private final Map<String, Entry> keys = new HashMap<>();
+    private final Map<String, Map<String, String>> hashes = new ConcurrentHashMap<>();
+    private final Map<String, List<Consumer<String>>> subscribers = new ConcurrentHashMap<>();
+
+    @Override
+    public synchronized String get(String key) {
+        Entry entry = live(key);
+        return entry != null ? entry.value : null;
+    }
+
+    @Override
+    public synchronized boolean setIfAbsent(String key, String value, long ttlMillis) {
+        if (live(key) != null) {
+            return false;
+        }
+        keys.put(key, new Entry(value, System.currentTimeMillis() + ttlMillis));
+        return true;
+    }
+
+    @Override
+    public synchronized boolean compareAndDelete(String key, String expected) {
+        Entry entry = live(key);
+        if (entry == null || !entry.value.equals(expected)) {
+            return false;
+        }
+        keys.remove(key);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean compareAndExpire(String key, String expected, long ttlMillis) {
+        Entry entry = live(key);
+        if (entry == null || !entry.value.equals(expected)) {
+            return false;
+        }
+        keys.put(key, new Entry(expected, System.currentTimeMillis() + ttlMillis));
+        return true;
+    }
+
+    // Returns the entry if it has not expired, dropping it otherwise
+    private Entry live(String key) {
+        Entry entry = keys.get(key);
+        if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+            keys.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    @Override
+    public String hget(String hash, String field) {
+        Map<String, String> fields = hashes.get(hash);
+        return fields != null ? fields.get(field) : null;
+    }
+
+    @Override
+    public void hset(String hash, Map<String, String> fields) {
+        hashes.computeIfAbsent(hash, ignored -> new ConcurrentHashMap<>()).putAll(fields);
+    }
+
+    @Override
+    public String hremove(String hash, String field) {
+        Map<String, String> fields = hashes.get(hash);
+        return fields != null ? fields.remove(field) : null;
+    }
+
+    @Override
+    public void hscan(String hash, BiConsumer<String, String> consumer) {
+        Map<String, String> fields = hashes.get(hash);
+        if (fields != null) {
+            fields.forEach(consumer);
+        }
+    }
+
+    @Override
+    public long hlen(String hash) {
+        Map<String, String> fields = hashes.get(hash);
+        return fields != null ? fields.size() : 0;
+    }
+
+    @Override
+    public void publish(String channel, String message) {
+        List<Consumer<String>> listeners = subscribers.get(channel);
+        if (listeners != null) {
+            for (Consumer<String> listener : listeners) {
+                listener.accept(message);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(String channel, Consumer<String> listener, Runnable onResubscribe) {
+        // Delivery is in-process and never interrupted, so there is nothing to resubscribe
+        subscribers.computeIfAbsent(channel, ignored -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    @Override
+    public void close() {
+        // Shared by every cluster created on it; nothing to release
+    }
+}
@@ -0,0 +1,259 @@
+package com.braur0.discordauth;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Bounded table of failed verifications and blocks per address.
+ * <p>
+ * Addresses are reduced to a {@code long} key: IPv4 addresses are packed as-is, IPv6 addresses are hashed
+ * per half, so the key of the /24 (IPv4) or /64 (IPv6) subnet can be derived from an address key without
+ * looking at the address again. With subnet blocking enabled the table is keyed by subnet, so rotating
+ * addresses within it share one entry.
+ * <p>
+ * The table has a fixed capacity and never resizes. Each key may live in one of a small window of slots;
+ * expired entries count as free, and when the whole window is in use an entry is evicted, unblocked ones
+ * first. Lookups take no lock and allocate nothing.
+ */
+public final class IpReputation {
+
+    // Slots a key may occupy, starting at its home slot
+    private static final int WINDOW = 8;
+
+    // Tags in the top bits keep the key spaces of the different address kinds apart
+    private static final long IPV4 = 1L << 32;
+    private static final long IPV4_SUBNET = 2L << 32;
+    private static final long IPV6 = 1L << 62;
+    private static final long IPV6_SUBNET = 2L << 62;
+    // An IPv6 address key holds 31 hash bits of the network half above 31 of the interface half
+    private static final long HALF_MASK = (1L << 31) - 1;
+
+    private final StampedLock lock = new StampedLock();
+    private final int mask;
+    private final long[] keys;
+    private final int[] failures;
+    // Time (epoch millis) the entry is forgotten; blocked entries expire when the block ends
+    private final long[] expiresAt;
+    private final boolean[] blocked;
+
+    private final boolean subnets;
+    // Limits can be changed at runtime; entries keep the expiry they were given
+    private volatile int maxFailures;
+    private volatile long failureWindowMillis;
+    private volatile long blockMillis;
+
+    public IpReputation(int capacity, boolean subnets, int maxFailures, long failureWindowMillis, long blockMillis) {
+        int size = Integer.highestOneBit(Math.max(WINDOW, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.keys = new long[size];
+        this.failures = new int[size];
+        this.expiresAt = new long[size];
+        this.blocked = new boolean[size];
+        this.subnets = subnets;
+        this.maxFailures = maxFailures;
+        this.failureWindowMillis = failureWindowMillis;
+        this.blockMillis = blockMillis;
+    }
+
+    /**
+     * Apply new limits to failures recorded from now on.
+     */
+    public void setLimits(int maxFailures, long failureWindowMillis, long blockMillis) {
+        this.maxFailures = maxFailures;
+        this.failureWindowMillis = failureWindowMillis;
+        this.blockMillis = blockMillis;
+    }
+
+    /**
+     * Returns the table key of the address, or of its subnet when subnet blocking is enabled.
+     */
+    public long key(InetAddress address) {
+        return key(key(address, false));
+    }
+
+    /**
+     * Returns the table key for an address key from {@link #key(InetAddress, boolean)}, so a caller that
+     * already has it does not have to reduce the address again.
+     */
+    public long key(long addressKey) {
+        return subnets ? subnetKey(addressKey) : addressKey;
+    }
+
+    /**
+     * Returns the key of the address, or of its /24 (IPv4) or /64 (IPv6) subnet.
+     * <p>
+     * IPv4 keys are computed without allocating; {@link InetAddress} offers no way to read an IPv6 address
+     * without copying it, so callers that need several keys for one address should compute the address key
+     * once and derive the rest with {@link #subnetKey(long)}.
+     */
+    static long key(InetAddress address, boolean subnets) {
+        long key;
+        if (address instanceof Inet4Address) {
+            // Inet4Address.hashCode() is the address itself and, unlike getAddress(), does not copy it
+            key = IPV4 | (address.hashCode() & 0xffffffffL);
+        } else {
+            byte[] bytes = address.getAddress();
+            long high = 0;
+            long low = 0;
+            for (int i = 0; i < 8; i++) {
+                high = high << 8 | (bytes[i] & 0xff);
+                low = low << 8 | (bytes[i + 8] & 0xff);
+            }
+            key = IPV6 | (mix64(high) & HALF_MASK) << 31 | (mix64(high * 31 + low) & HALF_MASK);
+        }
+        return subnets ? subnetKey(key) : key;
+    }
+
+    /**
+     * Returns the key of the /24 (IPv4) or /64 (IPv6) subnet of an address key. Subnet keys map to themselves.
+     */
+    static long subnetKey(long key) {
+        if ((key & IPV6) != 0) {
+            return IPV6_SUBNET | (key >>> 31 & HALF_MASK);
+        }
+        if ((key & IPV4) != 0) {
+            return IPV4_SUBNET | (key & 0xffffff00L);
+        }
+        return key;
+    }
+
+    /**
+     * Returns true if the key is blocked at the given time.
+     */
+    public boolean isBlocked(long key, long now) {
+        long stamp = lock.tryOptimisticRead();
+        boolean result = findBlocked(key, now);
+        if (lock.validate(stamp)) {
+            return result;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return findBlocked(key, now);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private boolean findBlocked(long key, long now) {
+        int home = mix(key) & mask;
+        for (int i = 0; i < WINDOW; i++) {
+            int slot = (home + i) & mask;
+            if (keys[slot] == key && expiresAt[slot] > now) {
+                return blocked[slot];
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Count a failed verification for the key and block it once the limit is reached.
+     *
+     * @return true if this failure blocked the key
+     */
+    public boolean recordFailure(long key, long now) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotFor(key, now);
+            if (slot < 0) {
+                slot = claim(key, now);
+            }
+            if (blocked[slot]) {
+                return false;
+            }
+            if (++failures[slot] >= maxFailures) {
+                blocked[slot] = true;
+                expiresAt[slot] = now + blockMillis;
+                return true;
+            }
+            expiresAt[slot] = now + failureWindowMillis;
+            return false;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Block the key until the given time, regardless of its failure count.
+     */
+    public void block(long key, long until, long now) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = slotFor(key, now);
+            if (slot < 0) {
+                slot = claim(key, now);
+            }
+            blocked[slot] = true;
+            expiresAt[slot] = Math.max(expiresAt[slot], until);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Number of live entries at the given time.
+     */
+    public int size(long now) {
+        long stamp = lock.readLock();
+        try {
+            int count = 0;
+            for (long expiry : expiresAt) {
+                if (expiry > now) count++;
+            }
+            return count;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int slotFor(long key, long now) {
+        int home = mix(key) & mask;
+        for (int i = 0; i < WINDOW; i++) {
+            int slot = (home + i) & mask;
+            if (keys[slot] == key && expiresAt[slot] > now) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Take a free slot in the key's window. If none is free, evict the unblocked entry closest to expiry,
+     * so that spraying new addresses cannot push out active blocks unless the window holds nothing else.
+     */
+    private int claim(long key, long now) {
+        int home = mix(key) & mask;
+        int victim = -1;
+        for (int i = 0; i < WINDOW; i++) {
+            int slot = (home + i) & mask;
+            if (expiresAt[slot] <= now) {
+                victim = slot;
+                break;
+            }
+            if (victim < 0 || blocked[victim] && !blocked[slot]
+                    || blocked[victim] == blocked[slot] && expiresAt[slot] < expiresAt[victim]) {
+                victim = slot;
+            }
+        }
+        keys[victim] = key;
+        failures[victim] = 0;
+        blocked[victim] = false;
+        expiresAt[victim] = now + failureWindowMillis;
+        return victim;
+    }
+
+    static int mix(long value) {
+        return (int) mix64(value);
+    }
+
+    private static long mix64(long value) {
+        // MurmurHash3 finalizer
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9a3e53b1d8bL;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,652 @@
+package com.braur0.discordauth;
+
+import org.slf4j.Logger;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * JSON file backed {@link VerifiedStorage} that keeps every link in memory.
+ * <p>
+ * The state is kept as a JSON snapshot ({@code verified.json}) plus an append-only
+ * journal with one record per add or remove. A background compactor periodically
+ * folds the journal into a new snapshot, and startup replays snapshot plus journal.
+ * In lazy mode the load runs in the background and lookups wait a bounded time for it.
+ * <p>
+ * In write-behind mode a single persister thread group-commits every record queued
+ * within the configured window with one write and one fsync.
+ */
+public class JsonVerifiedStorage implements VerifiedStorage {
+
+    private final Path file;
+    private final Path journalFile;
+    private final Path rotatedJournalFile;
+    private final Logger logger;
+
+    // Verified players: UUID -> Discord snowflake and back
+    private final LinkIndex index = new LinkIndex(1024);
+
+    // Completes once the snapshot and journal are loaded; in lazy mode changes wait for it
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+    // Set when the snapshot or journal could not be read; the index is then incomplete and is never saved,
+    // while new changes still go to the journal
+    private volatile boolean loadFailed;
+    private final long parallelLoadThresholdBytes;
+    private final long lazyLookupMillis;
+    private final AtomicBoolean reportedSlowLoad = new AtomicBoolean();
+
+    // Guards journal appends and rotation so the journal order matches the map mutation order
+    private final Object journalLock = new Object();
+    private FileChannel journal;
+    private int journalRecords;
+
+    private final int compactThreshold;
+    private final Metrics.Histogram saveTimes;
+    private final AtomicBoolean compactionQueued = new AtomicBoolean();
+    private final ScheduledExecutorService compactor;
+
+    // Write-behind queue; a record of null marks a flush barrier
+    private final long writeBehindWindowMillis;
+    private final BlockingQueue<PendingWrite> writeQueue = new LinkedBlockingQueue<>();
+    private final Thread persister;
+    // Set under journalLock once the final barrier is queued; later changes are refused
+    private volatile boolean closed;
+
+    private record PendingWrite(String record, CompletableFuture<Void> future) {}
+
+    @FunctionalInterface
+    private interface RecordConsumer {
+        void accept(UUID uuid, long snowflake);
+    }
+
+    public JsonVerifiedStorage(Path file, Logger logger, int compactThreshold, long compactIntervalMinutes,
+                               long writeBehindWindowMillis, long parallelLoadThresholdBytes, boolean lazyLoad,
+                               long lazyLookupMillis, Metrics metrics) {
+        this.logger = logger;
+        this.file = file;
+        this.journalFile = file.resolveSibling(file.getFileName() + ".journal");
+        this.rotatedJournalFile = file.resolveSibling(file.getFileName() + ".journal.old");
+        this.compactThreshold = compactThreshold;
+        this.writeBehindWindowMillis = writeBehindWindowMillis;
+        this.parallelLoadThresholdBytes = parallelLoadThresholdBytes;
+        this.lazyLookupMillis = lazyLookupMillis;
+        this.saveTimes = metrics.histogram("storage_save_seconds", "Time to write a verified.json snapshot.");
+
+        if (lazyLoad) {
+            // Logins wait a bounded time for the load, see lookupUnloaded()
+            Thread loader = new Thread(() -> {
+                try {
+                    loadAndOpenJournal();
+                } catch (RuntimeException e) {
+                    logger.error("Background load of verified players failed", e);
+                    loaded.completeExceptionally(e);
+                }
+            }, "DiscordAuth-Loader");
+            loader.setDaemon(true);
+            loader.start();
+        } else {
+            loadAndOpenJournal();
+        }
+
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "DiscordAuth-Compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compactQuietly,
+                compactIntervalMinutes, compactIntervalMinutes, TimeUnit.MINUTES);
+
+        if (writeBehindWindowMillis > 0) {
+            this.persister = new Thread(this::runPersister, "DiscordAuth-Persister");
+            persister.setDaemon(true);
+            persister.start();
+        } else {
+            this.persister = null;
+        }
+    }
+
+    private void loadAndOpenJournal() {
+        load();
+        try {
+            this.journal = openJournal();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open verification journal " + journalFile, e);
+        }
+        loaded.complete(null);
+    }
+
+    /**
+     * Load verified players from the JSON snapshot and replay the journal on top of it.
+     */
+    private void load() {
+        long start = System.nanoTime();
+        int snapshotEntries = 0;
+        try {
+            if (Files.exists(file)) {
+                snapshotEntries = SnapshotLoader.load(file, index, parallelLoadThresholdBytes);
+            }
+        } catch (IOException | RuntimeException e) {
+            // The index now holds only part of the links; writing it as a snapshot would lose the rest
+            loadFailed = true;
+            logger.error("Failed to load verified players from {}; it will not be compacted or overwritten until it loads again",
+                    file, e);
+        }
+
+        try {
+            // A record torn by a crash would swallow the next record appended after it
+            truncateTornRecord(rotatedJournalFile);
+            truncateTornRecord(journalFile);
+
+            // A leftover rotated journal means the last compaction did not finish; it is older than the live one
+            journalRecords = replay(rotatedJournalFile, this::apply) + replay(journalFile, this::apply);
+
+            logger.info("Loaded {} verified players ({} snapshot entries, {} journal records) in {} ms",
+                    index.size(), snapshotEntries, journalRecords, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException | RuntimeException e) {
+            loadFailed = true;
+            logger.error("Failed to replay the verification journal of {}; it will not be compacted until it loads again",
+                    file, e);
+        }
+    }
+
+    /**
+     * Feed every record of a journal file to the consumer; a removal is reported as snowflake 0.
+     * Records are absolute (set or delete), so replaying one that is already in the snapshot is harmless.
+     */
+    private int replay(Path journalPath, RecordConsumer consumer) throws IOException {
+        if (!Files.exists(journalPath)) {
+            return 0;
+        }
+
+        int records = 0;
+        try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                try {
+                    if (line.charAt(0) == '+') {
+                        int space = line.indexOf(' ');
+                        consumer.accept(UUID.fromString(line.substring(1, space)), Long.parseLong(line.substring(space + 1)));
+                    } else if (line.charAt(0) == '-') {
+                        consumer.accept(UUID.fromString(line.substring(1)), 0);
+                    } else {
+                        throw new IllegalArgumentException("unknown record type");
+                    }
+                    records++;
+                } catch (RuntimeException e) {
+                    // Most likely a record torn by a crash mid-write; everything before it is intact
+                    logger.warn("Skipping malformed record in {}: {}", journalPath, line);
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Cut a journal back to its last complete (newline-terminated) record. A crash mid-append can leave a
+     * partial record at the end; left in place, the next append would continue on the same line and both
+     * records would be lost on the following replay.
+     */
+    private void truncateTornRecord(Path journalPath) throws IOException {
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long complete = lastNewline(channel, size) + 1;
+            if (complete < size) {
+                logger.warn("Discarding {} bytes of a torn record at the end of {}", size - complete, journalPath);
+                channel.truncate(complete);
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * Position of the last newline in the first {@code size} bytes of the channel, or -1 if there is none.
+     */
+    private static long lastNewline(FileChannel channel, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long end = size;
+        while (end > 0) {
+            int length = (int) Math.min(buffer.capacity(), end);
+            long start = end - length;
+            buffer.clear().limit(length);
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) >= 0) {
+                // Keep reading until the chunk is complete
+            }
+            for (int i = length - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return start + i;
+                }
+            }
+            end = start;
+        }
+        return -1;
+    }
+
+    /**
+     * Slow path used while a lazy load is running: wait up to {@code lazyLookupMillis} for the loader, which
+     * reads the files once for every login instead of each login scanning them again. A lookup that times
+     * out is answered from the part of the index loaded so far, so a linked player may be asked to verify
+     * while the load is slow; their link applies again as soon as it completes.
+     */
+    private long lookupUnloaded(UUID uuid) {
+        try {
+            loaded.get(lazyLookupMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (reportedSlowLoad.compareAndSet(false, true)) {
+                logger.warn("Verified players are still loading after {} ms; answering logins from the partial index.",
+                        lazyLookupMillis);
+            }
+        } catch (ExecutionException e) {
+            // The load failed and was logged; the index holds whatever it read
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return index.get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    private long lookup(UUID uuid) {
+        if (!loaded.isDone()) {
+            return lookupUnloaded(uuid);
+        }
+        return index.get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Set the snowflake linked to a player, or remove the link when it is 0.
+     */
+    private void apply(UUID uuid, long snowflake) {
+        if (snowflake == 0) {
+            index.remove(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        } else {
+            index.put(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), snowflake);
+        }
+    }
+
+    private FileChannel openJournal() throws IOException {
+        return FileChannel.open(journalFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Append newline-terminated records to the journal and fsync it, or queue them for the persister in
+     * write-behind mode. Must be called while holding {@code journalLock}.
+     */
+    private CompletableFuture<Void> appendRecord(String record) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (persister != null) {
+            writeQueue.add(new PendingWrite(record, future));
+            return future;
+        }
+
+        try {
+            writeRecords(List.of(record));
+            journal.force(false);
+            future.complete(null);
+        } catch (IOException e) {
+            logger.error("Failed to append to verification journal {}", journalFile, e);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Write records to the journal in a single call and queue a compaction once the journal
+     * grows past the threshold. Must be called while holding {@code journalLock}.
+     */
+    private void writeRecords(List<String> records) throws IOException {
+        StringBuilder batch = new StringBuilder(records.size() * 48);
+        records.forEach(batch::append);
+        // An element may hold several records (bulk import), so count the lines
+        for (int i = 0; i < batch.length(); i++) {
+            if (batch.charAt(i) == '\n') journalRecords++;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            journal.write(buffer);
+        }
+
+        if (journalRecords >= compactThreshold && compactionQueued.compareAndSet(false, true)) {
+            compactor.execute(this::compactQuietly);
+        }
+    }
+
+    private static CompletableFuture<Void> closedFailure() {
+        return CompletableFuture.failedFuture(new IllegalStateException("Verified player storage is closed"));
+    }
+
+    /**
+     * Persister loop: collect everything queued within the window after the first record,
+     * then make the whole batch durable with one write and one fsync. Exits once storage is closed
+     * and the final barrier has been written.
+     */
+    private void runPersister() {
+        List<PendingWrite> batch = new ArrayList<>();
+        List<String> records = new ArrayList<>();
+        while (!closed || !writeQueue.isEmpty()) {
+            try {
+                PendingWrite first = writeQueue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(writeBehindWindowMillis);
+                long remaining;
+                while ((remaining = deadline - System.nanoTime()) > 0) {
+                    PendingWrite next = writeQueue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                    writeQueue.drainTo(batch);
+                }
+            } catch (InterruptedException e) {
+                // Only close() ends the loop, so every queued write still completes; write what is queued now
+                writeQueue.drainTo(batch);
+            }
+
+            if (batch.isEmpty()) continue;
+            batch.forEach(write -> {
+                if (write.record() != null) records.add(write.record());
+            });
+
+            IOException failure = null;
+            synchronized (journalLock) {
+                try {
+                    if (!records.isEmpty()) {
+                        writeRecords(records);
+                        journal.force(false);
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                    logger.error("Failed to persist {} queued verification records to {}", records.size(), journalFile, e);
+                }
+            }
+            for (PendingWrite write : batch) {
+                if (failure == null) {
+                    write.future().complete(null);
+                } else {
+                    write.future().completeExceptionally(failure);
+                }
+            }
+            batch.clear();
+            records.clear();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> flush() {
+        if (!loaded.isDone()) {
+            return loaded.thenCompose(ignored -> flush());
+        }
+        if (persister == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        synchronized (journalLock) {
+            if (closed) {
+                return closedFailure();
+            }
+            return queueBarrier();
+        }
+    }
+
+    // Must be called while holding journalLock
+    private CompletableFuture<Void> queueBarrier() {
+        CompletableFuture<Void> barrier = new CompletableFuture<>();
+        writeQueue.add(new PendingWrite(null, barrier));
+        return barrier;
+    }
+
+    private void compactQuietly() {
+        if (!loaded.isDone() || loaded.isCompletedExceptionally()) {
+            return;
+        }
+        try {
+            save();
+        } catch (RuntimeException e) {
+            logger.error("Unexpected error while compacting {}", file, e);
+        }
+    }
+
+    /**
+     * Fold the journal into a new snapshot of the verified players.
+     * The snapshot is written to a temporary file and atomically swapped in. Does nothing if the
+     * files could not be loaded, since the snapshot would then miss every link that was not read.
+     */
+    public void save() {
+        compactionQueued.set(false);
+        if (loadFailed) {
+            return;
+        }
+        long start = saveTimes.start();
+        try {
+            synchronized (journalLock) {
+                if (journalRecords == 0 && Files.exists(file)) {
+                    return;
+                }
+
+                // Rotate the journal so appends can continue while the snapshot is written
+                journal.close();
+                if (Files.exists(rotatedJournalFile)) {
+                    Files.write(rotatedJournalFile, Files.readAllBytes(journalFile), StandardOpenOption.APPEND);
+                    Files.delete(journalFile);
+                } else {
+                    Files.move(journalFile, rotatedJournalFile, StandardCopyOption.ATOMIC_MOVE);
+                }
+                journal = openJournal();
+                journalRecords = 0;
+            }
+
+            // Every rotated record is already reflected in the index; later changes live in the new journal
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8);
+                 JsonWriter json = new JsonWriter(writer)) {
+                long[] links = index.snapshot();
+                json.beginObject();
+                for (int i = 0; i < links.length; i += 3) {
+                    json.name(new UUID(links[i], links[i + 1]).toString()).value(Long.toString(links[i + 2]));
+                }
+                json.endObject();
+            }
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Files.deleteIfExists(rotatedJournalFile);
+            saveTimes.recordSince(start);
+        } catch (IOException e) {
+            logger.error("Failed to save verified players to {}", file, e);
+        }
+    }
+
+    /**
+     * Flush queued writes, stop the background threads, write a final snapshot and close the journal.
+     */
+    @Override
+    public void close() {
+        try {
+            loaded.join();
+        } catch (RuntimeException e) {
+            // Nothing was loaded, so there is nothing to flush or snapshot
+            compactor.shutdownNow();
+            return;
+        }
+        CompletableFuture<Void> barrier = null;
+        synchronized (journalLock) {
+            // The barrier goes in before the persister may stop, so it drains everything queued until now
+            if (persister != null && !closed) {
+                barrier = queueBarrier();
+            }
+            closed = true;
+        }
+        if (barrier != null) {
+            try {
+                barrier.get(10, TimeUnit.SECONDS);
+                persister.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("Failed to flush queued verification records on shutdown", e);
+            }
+        }
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        save();
+        synchronized (journalLock) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.error("Failed to close verification journal {}", journalFile, e);
+            }
+        }
+    }
+
+    /**
+     * Add a verified player and append the change to the journal.
+     * The returned future completes once the change is on disk; if the write fails, the link is undone.
+     */
+    @Override
+    public CompletableFuture<Void> add(UUID uuid, String discordId) {
+        long snowflake;
+        try {
+            snowflake = Long.parseLong(discordId);
+        } catch (NumberFormatException e) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Invalid Discord ID: " + discordId, e));
+        }
+        if (!loaded.isDone()) {
+            return loaded.thenCompose(ignored -> add(uuid, discordId));
+        }
+
+        synchronized (journalLock) {
+            if (closed) {
+                return closedFailure();
+            }
+            long msb = uuid.getMostSignificantBits();
+            long lsb = uuid.getLeastSignificantBits();
+            long previous = index.put(msb, lsb, snowflake);
+            return appendRecord("+" + uuid + " " + snowflake + "\n").whenComplete((ignored, error) -> {
+                if (error != null) {
+                    // Not on disk, so it must not count as verified either, unless a later change replaced it
+                    synchronized (journalLock) {
+                        if (index.get(msb, lsb) == snowflake) {
+                            apply(uuid, previous);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Add many verified players with a single journal write.
+     * The returned future completes once all of them are on disk.
+     */
+    @Override
+    public CompletableFuture<Void> addAll(Map<UUID, String> links) {
+        long[] snowflakes = new long[links.size()];
+        int i = 0;
+        for (String discordId : links.values()) {
+            try {
+                snowflakes[i++] = Long.parseLong(discordId);
+            } catch (NumberFormatException e) {
+                return CompletableFuture.failedFuture(new IllegalArgumentException("Invalid Discord ID: " + discordId, e));
+            }
+        }
+        if (!loaded.isDone()) {
+            return loaded.thenCompose(ignored -> addAll(links));
+        }
+
+        StringBuilder records = new StringBuilder(links.size() * 58);
+        synchronized (journalLock) {
+            if (closed) {
+                return closedFailure();
+            }
+            i = 0;
+            for (UUID uuid : links.keySet()) {
+                long snowflake = snowflakes[i++];
+                apply(uuid, snowflake);
+                records.append('+').append(uuid).append(' ').append(snowflake).append('\n');
+            }
+            return appendRecord(records.toString());
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<UUID, String> consumer) {
+        loaded.join();
+        long[] links = index.snapshot();
+        for (int i = 0; i < links.length; i += 3) {
+            consumer.accept(new UUID(links[i], links[i + 1]), Long.toString(links[i + 2]));
+        }
+    }
+
+    @Override
+    public boolean isVerified(UUID uuid) {
+        return lookup(uuid) != 0;
+    }
+
+    /**
+     * Remove a verified player and append the change to the journal.
+     * The returned future completes once the change is on disk.
+     */
+    @Override
+    public CompletableFuture<Void> remove(UUID uuid) {
+        if (!loaded.isDone()) {
+            return loaded.thenCompose(ignored -> remove(uuid));
+        }
+        synchronized (journalLock) {
+            if (closed) {
+                return closedFailure();
+            }
+            if (index.remove(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) == 0) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return appendRecord("-" + uuid + "\n");
+        }
+    }
+
+    @Override
+    public String getDiscordId(UUID uuid) {
+        long snowflake = lookup(uuid);
+        return snowflake == 0 ? null : Long.toString(snowflake);
+    }
+
+    @Override
+    public UUID getPlayerIdByDiscordId(String discordId) {
+        try {
+            // Reverse lookups are admin-only, so they simply wait for a lazy load to finish
+            loaded.join();
+            return index.getUuid(Long.parseLong(discordId));
+        } catch (NumberFormatException | CompletionException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package com.braur0.discordauth;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Compact in-memory index of verified links: player UUID {@code (msb, lsb)} to Discord snowflake and back.
+ * <p>
+ * Links are stored densely in a single {@code long[]} (three longs per link) and located through two
+ * open-addressing {@code int[]} tables, one keyed by UUID and one keyed by snowflake. That is roughly
+ * 35 bytes per link with no per-entry objects. Reads are lock-free (optimistic) and allocation-free;
+ * writes are serialized.
+ * <p>
+ * Discord snowflakes are never 0, so 0 is used as the "absent" value.
+ */
+public final class LinkIndex {
+
+    private static final int STRIDE = 3;
+    private static final int MIN_TABLE_SIZE = 16;
+
+    private final StampedLock lock = new StampedLock();
+
+    // Dense link storage: [msb, lsb, snowflake] per link
+    private long[] entries;
+    private int size;
+
+    // Open-addressing tables holding (entry index + 1); 0 marks an empty slot
+    private int[] byUuid;
+    private int[] bySnowflake;
+
+    public LinkIndex(int expectedSize) {
+        int capacity = Math.max(expectedSize, MIN_TABLE_SIZE);
+        this.entries = new long[capacity * STRIDE];
+        this.byUuid = new int[tableSizeFor(capacity)];
+        this.bySnowflake = new int[tableSizeFor(capacity)];
+    }
+
+    /**
+     * Returns the snowflake linked to the UUID, or 0 if there is none.
+     */
+    public long get(long msb, long lsb) {
+        long stamp = lock.tryOptimisticRead();
+        long snowflake = findSnowflake(msb, lsb);
+        if (lock.validate(stamp)) {
+            return snowflake;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return findSnowflake(msb, lsb);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public boolean containsKey(long msb, long lsb) {
+        return get(msb, lsb) != 0;
+    }
+
+    /**
+     * Returns the UUID linked to the snowflake, or null if there is none.
+     */
+    public UUID getUuid(long snowflake) {
+        if (snowflake == 0) {
+            return null;
+        }
+        long stamp = lock.readLock();
+        try {
+            int entry = findBySnowflake(bySnowflake, entries, snowflake);
+            return entry < 0 ? null : new UUID(entries[entry * STRIDE], entries[entry * STRIDE + 1]);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Link the UUID to the snowflake, replacing any previous link of that UUID.
+     * A snowflake that was linked to another UUID now resolves to this one.
+     *
+     * @return the previously linked snowflake, or 0
+     */
+    public long put(long msb, long lsb, long snowflake) {
+        if (snowflake == 0) {
+            throw new IllegalArgumentException("Discord snowflake must not be 0");
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            return putLocked(msb, lsb, snowflake);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Insert {@code [msb, lsb, snowflake]} triples in order while taking the lock once.
+     */
+    public void putAll(long[] links, int offset, int length) {
+        long stamp = lock.writeLock();
+        try {
+            for (int i = offset; i < offset + length; i += STRIDE) {
+                if (links[i + 2] != 0) {
+                    putLocked(links[i], links[i + 1], links[i + 2]);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Grow the storage so that the given number of additional links fit without resizing.
+     */
+    public void reserve(int additional) {
+        long stamp = lock.writeLock();
+        try {
+            int capacity = size + additional;
+            if (capacity * STRIDE > entries.length) {
+                entries = Arrays.copyOf(entries, capacity * STRIDE);
+            }
+            int tableSize = tableSizeFor(capacity);
+            if (tableSize > byUuid.length) {
+                rehash(tableSize);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private long putLocked(long msb, long lsb, long snowflake) {
+        int entry = findByUuid(byUuid, entries, msb, lsb);
+        if (entry >= 0) {
+            long previous = entries[entry * STRIDE + 2];
+            if (previous != snowflake) {
+                unlinkSnowflake(previous, entry);
+                entries[entry * STRIDE + 2] = snowflake;
+            }
+            linkSnowflake(snowflake, entry);
+            return previous;
+        }
+
+        if (size * STRIDE == entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        if ((size + 1) * 4 > byUuid.length * 3) {
+            rehash(byUuid.length * 2);
+        }
+
+        entry = size++;
+        entries[entry * STRIDE] = msb;
+        entries[entry * STRIDE + 1] = lsb;
+        entries[entry * STRIDE + 2] = snowflake;
+        insertSlot(byUuid, uuidHash(msb, lsb), entry);
+        linkSnowflake(snowflake, entry);
+        return 0;
+    }
+
+    /**
+     * Remove the link of the UUID.
+     *
+     * @return the removed snowflake, or 0 if the UUID was not linked
+     */
+    public long remove(long msb, long lsb) {
+        long stamp = lock.writeLock();
+        try {
+            int entry = findByUuid(byUuid, entries, msb, lsb);
+            if (entry < 0) {
+                return 0;
+            }
+            long snowflake = entries[entry * STRIDE + 2];
+            deleteSlot(byUuid, uuidHash(msb, lsb), entry);
+            unlinkSnowflake(snowflake, entry);
+
+            // Move the last link into the hole to keep storage dense
+            int last = --size;
+            if (entry != last) {
+                long lastMsb = entries[last * STRIDE];
+                long lastLsb = entries[last * STRIDE + 1];
+                long lastSnowflake = entries[last * STRIDE + 2];
+                entries[entry * STRIDE] = lastMsb;
+                entries[entry * STRIDE + 1] = lastLsb;
+                entries[entry * STRIDE + 2] = lastSnowflake;
+                repointSlot(byUuid, uuidHash(lastMsb, lastLsb), last, entry);
+                repointSlot(bySnowflake, snowflakeHash(lastSnowflake), last, entry);
+            }
+            entries[last * STRIDE + 2] = 0;
+            return snowflake;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            size = 0;
+            Arrays.fill(entries, 0);
+            Arrays.fill(byUuid, 0);
+            Arrays.fill(bySnowflake, 0);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns a copy of all links as {@code [msb, lsb, snowflake]} triples, so callers can
+     * serialize them without holding the lock.
+     */
+    public long[] snapshot() {
+        long stamp = lock.readLock();
+        try {
+            return Arrays.copyOf(entries, size * STRIDE);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private long findSnowflake(long msb, long lsb) {
+        // Read the fields once: in optimistic mode they may change underneath us,
+        // so all indexing is bounds-checked and the result is discarded if validation fails
+        long[] entries = this.entries;
+        int entry = findByUuid(byUuid, entries, msb, lsb);
+        return entry < 0 || entry * STRIDE + 2 >= entries.length ? 0 : entries[entry * STRIDE + 2];
+    }
+
+    private static int findByUuid(int[] table, long[] entries, long msb, long lsb) {
+        int mask = table.length - 1;
+        int slot = uuidHash(msb, lsb) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            int value = table[slot];
+            if (value == 0) {
+                return -1;
+            }
+            int entry = value - 1;
+            int base = entry * STRIDE;
+            if (base + 1 < entries.length && entries[base] == msb && entries[base + 1] == lsb) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int findBySnowflake(int[] table, long[] entries, long snowflake) {
+        int mask = table.length - 1;
+        int slot = snowflakeHash(snowflake) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            int value = table[slot];
+            if (value == 0) {
+                return -1;
+            }
+            int entry = value - 1;
+            if (entry * STRIDE + 2 < entries.length && entries[entry * STRIDE + 2] == snowflake) {
+                return entry;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void linkSnowflake(long snowflake, int entry) {
+        int existing = findBySnowflake(bySnowflake, entries, snowflake);
+        if (existing >= 0 && existing != entry) {
+            repointSlot(bySnowflake, snowflakeHash(snowflake), existing, entry);
+        } else if (existing < 0) {
+            insertSlot(bySnowflake, snowflakeHash(snowflake), entry);
+        }
+    }
+
+    private void unlinkSnowflake(long snowflake, int entry) {
+        // Only drop the reverse link if it still points at this entry
+        deleteSlot(bySnowflake, snowflakeHash(snowflake), entry);
+    }
+
+    private static void insertSlot(int[] table, int hash, int entry) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+    }
+
+    private static void repointSlot(int[] table, int hash, int from, int to) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            if (table[slot] == from + 1) {
+                table[slot] = to + 1;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Delete the slot holding the entry and shift later members of the probe run back,
+     * so lookups never need tombstones.
+     */
+    private void deleteSlot(int[] table, int hash, int entry) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != entry + 1) {
+            if (table[slot] == 0) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (table[next] != 0) {
+            int home = slotHash(table, table[next] - 1) & mask;
+            // Move the element back if its home slot is not between the hole and its current slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table[hole] = table[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[hole] = 0;
+    }
+
+    private int slotHash(int[] table, int entry) {
+        int base = entry * STRIDE;
+        return table == byUuid ? uuidHash(entries[base], entries[base + 1]) : snowflakeHash(entries[base + 2]);
+    }
+
+    private void rehash(int tableSize) {
+        int[] newByUuid = new int[tableSize];
+        int[] newBySnowflake = new int[tableSize];
+        for (int entry = 0; entry < size; entry++) {
+            int base = entry * STRIDE;
+            insertSlot(newByUuid, uuidHash(entries[base], entries[base + 1]), entry);
+        }
+        // Carry over the reverse links as they are; a snowflake taken over by a newer link must stay with it
+        int[] previous = bySnowflake;
+        for (int slot = 0; slot < previous.length; slot++) {
+            int value = previous[slot];
+            if (value != 0) {
+                insertSlot(newBySnowflake, snowflakeHash(entries[(value - 1) * STRIDE + 2]), value - 1);
+            }
+        }
+        byUuid = newByUuid;
+        bySnowflake = newBySnowflake;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int target = Math.max(MIN_TABLE_SIZE, capacity + capacity / 3 + 1);
+        return Integer.highestOneBit(target - 1) << 1;
+    }
+
+    private static int uuidHash(long msb, long lsb) {
+        return mix(msb * 31 + lsb);
+    }
+
+    private static int snowflakeHash(long snowflake) {
+        return mix(snowflake);
+    }
+
+    private static int mix(long value) {
+        // MurmurHash3 finalizer
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9a3e53b1d8bL;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+}
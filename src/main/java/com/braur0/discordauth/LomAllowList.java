@@ -0,0 +1,317 @@
+package com.braur0.discordauth;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Immutable snapshot of the usernames in LOM's {@code allowed-users.txt}, matched case-insensitively.
+ * <p>
+ * Lines ending in {@code *} are prefix patterns ({@code cam_*} matches every name starting with {@code cam_});
+ * any other {@code *} is taken literally. A lone {@code *} is ignored rather than letting everyone in.
+ * <p>
+ * Names are stored lower-cased, back to back, one length byte followed by the ASCII bytes, in a single
+ * {@code byte[]}. An open-addressing table of {@code long}s packs each name's hash with its offset, so a lookup
+ * compares hashes within one array and touches the name bytes only on a hash match. Prefix patterns are
+ * kept in a trie flattened into arrays. Usernames are case-folded while they are hashed and compared, so a
+ * lookup allocates nothing. The rare names with non-ASCII characters are kept in an ordinary set.
+ * <p>
+ * A reload builds a new snapshot off the login path and swaps it in with a single reference write, so
+ * lookups never lock and never see a half-loaded list.
+ */
+public final class LomAllowList {
+
+    public static final LomAllowList EMPTY = new Builder().build();
+
+    private static final int MAX_PACKED_LENGTH = 255;
+
+    // Hash table of packed names: (hash << 32) | (offset + 1), 0 for a free slot
+    private final long[] slots;
+    private final byte[] names;
+    private final int nameCount;
+    // Names that cannot be packed as ASCII, lower-cased with Locale.ROOT
+    private final Set<String> otherNames;
+
+    // Prefix trie: node i has edges firstEdge[i] until firstEdge[i + 1], sorted by character
+    private final int[] firstEdge;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    private final boolean[] terminal;
+    // The patterns as written, lower-cased and without the '*', for diffs between reloads
+    private final List<String> prefixes;
+
+    private LomAllowList(Builder builder) {
+        this.otherNames = Set.copyOf(builder.otherNames);
+        this.prefixes = List.copyOf(builder.prefixes);
+
+        // Pack the names, then index them at a load factor of at most one half
+        ByteArrayOutputStream packed = new ByteArrayOutputStream();
+        List<Integer> offsets = new ArrayList<>(builder.names.size());
+        for (String name : builder.names) {
+            offsets.add(packed.size());
+            packed.write(name.length());
+            packed.write(name.getBytes(StandardCharsets.US_ASCII), 0, name.length());
+        }
+        this.names = packed.toByteArray();
+        this.nameCount = offsets.size();
+        this.slots = new long[Integer.highestOneBit(Math.max(2, nameCount * 2) - 1) << 1];
+        int mask = slots.length - 1;
+        for (int offset : offsets) {
+            int hash = hash(names, offset + 1, names[offset] & 0xFF);
+            int slot = mix(hash) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = ((long) hash << 32) | (offset + 1L);
+        }
+
+        // Flatten the trie breadth-first so each node's edges are adjacent
+        List<Builder.Node> order = new ArrayList<>();
+        ArrayDeque<Builder.Node> queue = new ArrayDeque<>();
+        queue.add(builder.root);
+        int edges = 0;
+        while (!queue.isEmpty()) {
+            Builder.Node node = queue.poll();
+            node.index = order.size();
+            order.add(node);
+            edges += node.children.size();
+            queue.addAll(node.children.values());
+        }
+        this.firstEdge = new int[order.size() + 1];
+        this.edgeChars = new char[edges];
+        this.edgeTargets = new int[edges];
+        this.terminal = new boolean[order.size()];
+        int edge = 0;
+        for (Builder.Node node : order) {
+            firstEdge[node.index] = edge;
+            terminal[node.index] = node.terminal;
+            for (Map.Entry<Character, Builder.Node> child : node.children.entrySet()) {
+                edgeChars[edge] = child.getKey();
+                edgeTargets[edge] = child.getValue().index;
+                edge++;
+            }
+        }
+        firstEdge[order.size()] = edge;
+    }
+
+    /**
+     * Read the file line by line; blank lines and lines starting with {@code #} are skipped.
+     */
+    public static LomAllowList load(Path file) throws IOException {
+        Builder builder = new Builder();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                builder.add(line);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Build a list from lines in the format of {@code allowed-users.txt}.
+     */
+    public static LomAllowList of(Iterable<String> lines) {
+        Builder builder = new Builder();
+        lines.forEach(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * Whether the username is listed or starts with a listed prefix, ignoring case.
+     */
+    public boolean contains(String username) {
+        int hash = FNV_OFFSET;
+        for (int i = 0; i < username.length(); i++) {
+            char c = username.charAt(i);
+            if (c >= 0x80) {
+                return otherNames.contains(username.toLowerCase(Locale.ROOT)) || matchesPrefix(username);
+            }
+            hash = (hash ^ fold(c)) * FNV_PRIME;
+        }
+        return containsPacked(username, hash) || matchesPrefix(username);
+    }
+
+    private boolean containsPacked(String username, int hash) {
+        if (nameCount == 0 || username.length() > MAX_PACKED_LENGTH) {
+            return false;
+        }
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            long entry = slots[slot];
+            if ((int) (entry >>> 32) == hash && equalsPacked((int) entry - 1, username)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean equalsPacked(int offset, String username) {
+        if ((names[offset] & 0xFF) != username.length()) {
+            return false;
+        }
+        for (int i = 0; i < username.length(); i++) {
+            if (names[offset + 1 + i] != fold(username.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matchesPrefix(String username) {
+        int node = 0;
+        for (int i = 0; i < username.length(); i++) {
+            if (terminal[node]) {
+                return true;
+            }
+            node = child(node, Character.toLowerCase(username.charAt(i)));
+            if (node < 0) {
+                return false;
+            }
+        }
+        return terminal[node];
+    }
+
+    private int child(int node, char c) {
+        int low = firstEdge[node];
+        int high = firstEdge[node + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char edge = edgeChars[middle];
+            if (edge < c) {
+                low = middle + 1;
+            } else if (edge > c) {
+                high = middle - 1;
+            } else {
+                return edgeTargets[middle];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Number of names and patterns.
+     */
+    public int size() {
+        return nameCount + otherNames.size() + prefixes.size();
+    }
+
+    /**
+     * Number of names and patterns in this list that are not in the other one.
+     */
+    public int countMissingFrom(LomAllowList other) {
+        int missing = 0;
+        for (int offset = 0; offset < names.length; offset += 1 + (names[offset] & 0xFF)) {
+            String name = new String(names, offset + 1, names[offset] & 0xFF, StandardCharsets.US_ASCII);
+            if (!other.containsPacked(name, hash(names, offset + 1, names[offset] & 0xFF))) {
+                missing++;
+            }
+        }
+        for (String name : otherNames) {
+            if (!other.otherNames.contains(name)) {
+                missing++;
+            }
+        }
+        Set<String> otherPrefixes = new HashSet<>(other.prefixes);
+        for (String prefix : prefixes) {
+            if (!otherPrefixes.contains(prefix)) {
+                missing++;
+            }
+        }
+        return missing;
+    }
+
+    private static final int FNV_OFFSET = 0x811C9DC5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private static int hash(byte[] bytes, int from, int length) {
+        int hash = FNV_OFFSET;
+        for (int i = from; i < from + length; i++) {
+            hash = (hash ^ bytes[i]) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // ASCII lower-casing; callers have already ruled out other characters
+    private static byte fold(char c) {
+        return (byte) (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+    }
+
+    // Spread FNV's weak low bits over the table index
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Builder {
+
+        private static final class Node {
+            final TreeMap<Character, Node> children = new TreeMap<>();
+            boolean terminal;
+            int index;
+        }
+
+        final Set<String> names = new HashSet<>();
+        final Set<String> otherNames = new HashSet<>();
+        final Set<String> prefixes = new TreeSet<>();
+        final Node root = new Node();
+
+        void add(String line) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#") || trimmed.equals("*")) {
+                return;
+            }
+
+            if (trimmed.endsWith("*")) {
+                String prefix = foldPrefix(trimmed.substring(0, trimmed.length() - 1));
+                prefixes.add(prefix);
+                Node node = root;
+                for (int i = 0; i < prefix.length(); i++) {
+                    node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node());
+                }
+                node.terminal = true;
+                return;
+            }
+
+            String name = trimmed.toLowerCase(Locale.ROOT);
+            if (name.length() <= MAX_PACKED_LENGTH && isAscii(name)) {
+                names.add(name);
+            } else {
+                otherNames.add(name);
+            }
+        }
+
+        // The trie is matched one character at a time, so fold the same way
+        private static String foldPrefix(String prefix) {
+            char[] chars = prefix.toCharArray();
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = Character.toLowerCase(chars[i]);
+            }
+            return new String(chars);
+        }
+
+        private static boolean isAscii(String name) {
+            for (int i = 0; i < name.length(); i++) {
+                if (name.charAt(i) >= 0x80) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        LomAllowList build() {
+            return new LomAllowList(this);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.braur0.discordauth;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small thread-safe cache that evicts the least recently used entry once it is full.
+ */
+public class LruCache<K, V> {
+
+    private final Map<K, V> map;
+
+    public LruCache(int capacity) {
+        this.map = new LinkedHashMap<>(Math.min(capacity, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        return map.get(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        map.put(key, value);
+    }
+
+    public synchronized void remove(K key) {
+        map.remove(key);
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+}
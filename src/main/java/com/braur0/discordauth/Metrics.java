@@ -0,0 +1,311 @@
+package com.braur0.discordauth;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of counters, gauges and latency histograms for the verification pipeline.
+ * <p>
+ * Counters are {@link LongAdder}s. Histograms record nanoseconds into log-linear buckets (32 per power of two,
+ * so quantiles are within about 3%) held in an {@link AtomicLongArray}; recording is one index computation and
+ * one atomic add. When metrics are disabled every counter and histogram is inert: recording is a single
+ * branch on a final field and {@link Histogram#start()} does not read the clock.
+ */
+public final class Metrics {
+
+    public static final Metrics DISABLED = new Metrics(false);
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final boolean enabled;
+    private final long startNanos = System.nanoTime();
+    private final List<Metric> metrics = new CopyOnWriteArrayList<>();
+
+    public Metrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Counter counter(String name, String help) {
+        Counter counter = new Counter(name, help, enabled);
+        register(counter);
+        return counter;
+    }
+
+    public Histogram histogram(String name, String help) {
+        Histogram histogram = new Histogram(name, help, enabled);
+        register(histogram);
+        return histogram;
+    }
+
+    /**
+     * Register a value that is read when metrics are reported.
+     */
+    public void gauge(String name, String help, LongSupplier value) {
+        register(new Gauge(name, help, "gauge", value));
+    }
+
+    /**
+     * Register a count kept elsewhere that only goes up, read when metrics are reported.
+     */
+    public void counter(String name, String help, LongSupplier value) {
+        register(new Gauge(name, help, "counter", value));
+    }
+
+    private void register(Metric metric) {
+        if (enabled) {
+            metrics.add(metric);
+        }
+    }
+
+    /**
+     * Write every metric in the Prometheus text exposition format.
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        for (Metric metric : metrics) {
+            out.append("# HELP discordauth_").append(metric.name).append(' ').append(metric.help).append('\n');
+            metric.writePrometheus(out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * One human-readable line per metric, for the admin command. Counters include their average rate per
+     * minute since the registry was created.
+     */
+    public List<String> describe() {
+        double minutes = Math.max(1e-9, (System.nanoTime() - startNanos) / (double) TimeUnit.MINUTES.toNanos(1));
+        List<String> lines = new ArrayList<>();
+        for (Metric metric : metrics) {
+            lines.add(metric.name + ": " + metric.describe(minutes));
+        }
+        return lines;
+    }
+
+    private abstract static class Metric {
+        final String name;
+        final String help;
+
+        Metric(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        abstract void writePrometheus(StringBuilder out);
+
+        abstract String describe(double minutes);
+    }
+
+    public static final class Counter extends Metric {
+        private final LongAdder value;
+
+        private Counter(String name, String help, boolean enabled) {
+            super(name, help);
+            this.value = enabled ? new LongAdder() : null;
+        }
+
+        public void increment() {
+            if (value != null) {
+                value.increment();
+            }
+        }
+
+        public void add(long amount) {
+            if (value != null) {
+                value.add(amount);
+            }
+        }
+
+        public long get() {
+            return value != null ? value.sum() : 0;
+        }
+
+        @Override
+        void writePrometheus(StringBuilder out) {
+            out.append("# TYPE discordauth_").append(name).append(" counter\n");
+            out.append("discordauth_").append(name).append(' ').append(get()).append('\n');
+        }
+
+        @Override
+        String describe(double minutes) {
+            return String.format(Locale.ROOT, "%d (%.1f/min)", get(), get() / minutes);
+        }
+    }
+
+    private static final class Gauge extends Metric {
+        private final String type;
+        private final LongSupplier value;
+
+        Gauge(String name, String help, String type, LongSupplier value) {
+            super(name, help);
+            this.type = type;
+            this.value = value;
+        }
+
+        @Override
+        void writePrometheus(StringBuilder out) {
+            out.append("# TYPE discordauth_").append(name).append(' ').append(type).append('\n');
+            out.append("discordauth_").append(name).append(' ').append(value.getAsLong()).append('\n');
+        }
+
+        @Override
+        String describe(double minutes) {
+            long current = value.getAsLong();
+            return type.equals("counter") ? String.format(Locale.ROOT, "%d (%.1f/min)", current, current / minutes)
+                    : Long.toString(current);
+        }
+    }
+
+    /**
+     * Latency histogram in nanoseconds, reported in seconds (Prometheus) or milliseconds (admin command).
+     */
+    public static final class Histogram extends Metric {
+        private static final int SUB_BITS = 5;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts;
+        private final LongAdder sum;
+
+        private Histogram(String name, String help, boolean enabled) {
+            super(name, help);
+            this.counts = enabled ? new AtomicLongArray(BUCKETS) : null;
+            this.sum = enabled ? new LongAdder() : null;
+        }
+
+        /**
+         * Returns the start time for {@link #recordSince(long)}, or 0 without reading the clock when disabled.
+         */
+        public long start() {
+            return counts != null ? System.nanoTime() : 0;
+        }
+
+        public void recordSince(long start) {
+            if (counts != null) {
+                record(System.nanoTime() - start);
+            }
+        }
+
+        public void record(long nanos) {
+            if (counts != null) {
+                long value = Math.max(0, nanos);
+                counts.incrementAndGet(index(value));
+                sum.add(value);
+            }
+        }
+
+        private static int index(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int shift = exponent - SUB_BITS;
+            return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+        }
+
+        // Largest value that falls into the bucket
+        private static long upperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+            long sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+            return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+        }
+
+        public long count() {
+            if (counts == null) {
+                return 0;
+            }
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += counts.get(i);
+            }
+            return total;
+        }
+
+        /**
+         * Returns the value below which the given fraction of recordings fall, in nanoseconds.
+         */
+        public long quantile(double quantile) {
+            long[] snapshot = snapshot();
+            long total = 0;
+            for (long count : snapshot) {
+                total += count;
+            }
+            return quantile(snapshot, total, quantile);
+        }
+
+        private static long quantile(long[] snapshot, long total, double quantile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return upperBound(i);
+                }
+            }
+            return upperBound(snapshot.length - 1);
+        }
+
+        private long[] snapshot() {
+            long[] snapshot = new long[BUCKETS];
+            if (counts != null) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    snapshot[i] = counts.get(i);
+                }
+            }
+            return snapshot;
+        }
+
+        @Override
+        void writePrometheus(StringBuilder out) {
+            long[] snapshot = snapshot();
+            long total = 0;
+            for (long count : snapshot) {
+                total += count;
+            }
+            String prefix = "discordauth_" + name;
+            out.append("# TYPE ").append(prefix).append(" summary\n");
+            for (double quantile : QUANTILES) {
+                out.append(prefix).append("{quantile=\"").append(quantile).append("\"} ")
+                        .append(seconds(quantile(snapshot, total, quantile))).append('\n');
+            }
+            out.append(prefix).append("_sum ").append(seconds(sum != null ? sum.sum() : 0)).append('\n');
+            out.append(prefix).append("_count ").append(total).append('\n');
+        }
+
+        @Override
+        String describe(double minutes) {
+            long[] snapshot = snapshot();
+            long total = 0;
+            for (long count : snapshot) {
+                total += count;
+            }
+            return String.format(Locale.ROOT, "count=%d p50=%.2fms p99=%.2fms p99.9=%.2fms", total,
+                    millis(quantile(snapshot, total, 0.5)), millis(quantile(snapshot, total, 0.99)),
+                    millis(quantile(snapshot, total, 0.999)));
+        }
+
+        private static String seconds(long nanos) {
+            return Double.toString(nanos / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+
+        private static double millis(long nanos) {
+            return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.braur0.discordauth;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the metrics in the Prometheus text format at {@code /metrics} on a local port.
+ */
+public class MetricsServer {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public MetricsServer(String host, int port, Metrics metrics, Logger logger) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "DiscordAuth-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/metrics", exchange -> respond(exchange, metrics));
+        server.start();
+        logger.info("Serving metrics at http://{}:{}/metrics", host, server.getAddress().getPort());
+    }
+
+    private static void respond(HttpExchange exchange, Metrics metrics) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,159 @@
+package com.braur0.discordauth;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Per-proxy cache of links held in remote storage, including players known to be unverified.
+ * <p>
+ * Entries expire after a time to live; players without a link are cached with a shorter one. The cache is
+ * bounded by the approximate memory its entries take rather than by their number, so unverified players, which
+ * carry no Discord ID, take less room than links. The least recently used entries are evicted first.
+ * <p>
+ * Concurrent misses for the same player share one load. A load that overlaps an invalidation is returned to
+ * its callers but not cached, so a stale value never outlives the change that replaced it.
+ */
+public class NearCache {
+
+    // Rough heap cost of a map entry, its UUID key and the cache entry, and of a String without its characters
+    private static final int ENTRY_BYTES = 112;
+    private static final int STRING_BYTES = 40;
+    // Discord IDs are snowflakes of up to 19 digits
+    private static final int LINK_BYTES = ENTRY_BYTES + STRING_BYTES + 2 * 19;
+
+    private static final class Entry {
+        final String discordId;
+        final long expiresAt;
+        final int weight;
+
+        Entry(String discordId, long expiresAt) {
+            this.discordId = discordId;
+            this.expiresAt = expiresAt;
+            this.weight = discordId != null ? ENTRY_BYTES + STRING_BYTES + 2 * discordId.length() : ENTRY_BYTES;
+        }
+    }
+
+    private final long maxWeight;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final Map<UUID, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private final Map<UUID, CompletableFuture<String>> loading = new ConcurrentHashMap<>();
+    private long weight;
+    // Bumped by every invalidation; loads that started before the last bump are not cached
+    private long version;
+
+    private final Metrics.Counter hits;
+    private final Metrics.Counter misses;
+    private final Metrics.Counter coalesced;
+
+    /**
+     * @param maxLinks how many links fit in the cache; more unverified players fit in the same room
+     */
+    public NearCache(int maxLinks, long ttlMillis, long negativeTtlMillis, Metrics metrics) {
+        this.maxWeight = (long) Math.max(1, maxLinks) * LINK_BYTES;
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.hits = metrics.counter("near_cache_hits_total", "Link lookups answered by the near-cache.");
+        this.misses = metrics.counter("near_cache_misses_total", "Link lookups that went to the cluster backend.");
+        this.coalesced = metrics.counter("near_cache_coalesced_total",
+                "Near-cache misses that waited for a lookup already in flight for the same player.");
+        metrics.gauge("near_cache_hit_ratio_percent", "Share of link lookups answered by the near-cache.", () -> {
+            long hit = hits.get();
+            long total = hit + misses.get();
+            return total == 0 ? 0 : hit * 100 / total;
+        });
+        metrics.gauge("near_cache_entries", "Links and unverified players held in the near-cache.", this::size);
+    }
+
+    /**
+     * Returns the player's Discord ID, or null if the player has no link, loading it on a miss.
+     *
+     * @throws RuntimeException if the load fails; failures are not cached
+     */
+    public String get(UUID playerId, Function<UUID, String> loader) {
+        long now = System.currentTimeMillis();
+        long loadVersion;
+        synchronized (this) {
+            Entry entry = entries.get(playerId);
+            if (entry != null) {
+                if (entry.expiresAt > now) {
+                    hits.increment();
+                    return entry.discordId;
+                }
+                discard(playerId);
+            }
+            loadVersion = version;
+        }
+        misses.increment();
+
+        CompletableFuture<String> load = new CompletableFuture<>();
+        CompletableFuture<String> inFlight = loading.putIfAbsent(playerId, load);
+        if (inFlight != null) {
+            coalesced.increment();
+            return inFlight.join();
+        }
+
+        try {
+            String discordId = loader.apply(playerId);
+            synchronized (this) {
+                if (version == loadVersion) {
+                    store(playerId, discordId, System.currentTimeMillis());
+                }
+            }
+            load.complete(discordId);
+            return discordId;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(playerId, load);
+        }
+    }
+
+    /**
+     * Cache a value that was just written.
+     */
+    public synchronized void put(UUID playerId, String discordId) {
+        version++;
+        store(playerId, discordId, System.currentTimeMillis());
+    }
+
+    public synchronized void invalidate(UUID playerId) {
+        version++;
+        discard(playerId);
+    }
+
+    public synchronized void clear() {
+        version++;
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void store(UUID playerId, String discordId, long now) {
+        Entry entry = new Entry(discordId, now + (discordId != null ? ttlMillis : negativeTtlMillis));
+        Entry previous = entries.put(playerId, entry);
+        weight += entry.weight - (previous != null ? previous.weight : 0);
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+        }
+    }
+
+    private void discard(UUID playerId) {
+        Entry removed = entries.remove(playerId);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+}
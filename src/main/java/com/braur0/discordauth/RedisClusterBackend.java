@@ -0,0 +1,162 @@
+package com.braur0.discordauth;
+
+import org.slf4j.Logger;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * {@link ClusterBackend} on a Redis-protocol server (Redis, Valkey, KeyDB, ...).
+ * <p>
+ * Commands share a connection pool. Each subscription holds its own connection on a daemon thread and
+ * reconnects after a second if the connection drops.
+ */
+public class RedisClusterBackend implements ClusterBackend {
+
+    private static final String COMPARE_AND_DELETE =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+    private static final String COMPARE_AND_EXPIRE =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end";
+    private static final int SCAN_COUNT = 1000;
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+    private final JedisPooled redis;
+    private final Logger logger;
+    private final List<JedisPubSub> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    public RedisClusterBackend(String uri, Logger logger) {
+        this.redis = new JedisPooled(URI.create(uri));
+        this.logger = logger;
+        // Fail fast on a wrong address instead of on the first login
+        redis.ping();
+    }
+
+    @Override
+    public String get(String key) {
+        return redis.get(key);
+    }
+
+    @Override
+    public boolean setIfAbsent(String key, String value, long ttlMillis) {
+        return "OK".equals(redis.set(key, value, SetParams.setParams().nx().px(ttlMillis)));
+    }
+
+    @Override
+    public boolean compareAndDelete(String key, String expected) {
+        return isOne(redis.eval(COMPARE_AND_DELETE, List.of(key), List.of(expected)));
+    }
+
+    @Override
+    public boolean compareAndExpire(String key, String expected, long ttlMillis) {
+        return isOne(redis.eval(COMPARE_AND_EXPIRE, List.of(key), List.of(expected, Long.toString(ttlMillis))));
+    }
+
+    private static boolean isOne(Object result) {
+        return result instanceof Long && (Long) result == 1L;
+    }
+
+    @Override
+    public String hget(String hash, String field) {
+        return redis.hget(hash, field);
+    }
+
+    @Override
+    public void hset(String hash, Map<String, String> fields) {
+        if (!fields.isEmpty()) {
+            redis.hset(hash, fields);
+        }
+    }
+
+    @Override
+    public String hremove(String hash, String field) {
+        // Read and delete in one round trip
+        Object previous = redis.eval("local v = redis.call('hget', KEYS[1], ARGV[1]) "
+                + "if v then redis.call('hdel', KEYS[1], ARGV[1]) end return v", List.of(hash), List.of(field));
+        return previous instanceof String ? (String) previous : null;
+    }
+
+    @Override
+    public void hscan(String hash, BiConsumer<String, String> consumer) {
+        ScanParams params = new ScanParams().count(SCAN_COUNT);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<Map.Entry<String, String>> page = redis.hscan(hash, cursor, params);
+            for (Map.Entry<String, String> entry : page.getResult()) {
+                consumer.accept(entry.getKey(), entry.getValue());
+            }
+            cursor = page.getCursor();
+        } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+    }
+
+    @Override
+    public long hlen(String hash) {
+        return redis.hlen(hash);
+    }
+
+    @Override
+    public void publish(String channel, String message) {
+        redis.publish(channel, message);
+    }
+
+    @Override
+    public void subscribe(String channel, Consumer<String> listener, Runnable onResubscribe) {
+        JedisPubSub pubSub = new JedisPubSub() {
+            @Override
+            public void onMessage(String ignored, String message) {
+                try {
+                    listener.accept(message);
+                } catch (RuntimeException e) {
+                    logger.error("Failed to handle cluster message on {}: {}", channel, message, e);
+                }
+            }
+        };
+        subscriptions.add(pubSub);
+
+        Thread thread = new Thread(() -> {
+            boolean first = true;
+            while (!closed) {
+                try {
+                    if (!first) {
+                        onResubscribe.run();
+                    }
+                    first = false;
+                    // Blocks until unsubscribed or the connection drops
+                    redis.subscribe(pubSub, channel);
+                } catch (RuntimeException e) {
+                    if (closed) {
+                        return;
+                    }
+                    logger.warn("Lost cluster subscription to {}, reconnecting: {}", channel, e.getMessage());
+                    try {
+                        Thread.sleep(RECONNECT_DELAY_MILLIS);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                }
+            }
+        }, "DiscordAuth-ClusterSubscriber");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (JedisPubSub pubSub : subscriptions) {
+            if (pubSub.isSubscribed()) {
+                pubSub.unsubscribe();
+            }
+        }
+        redis.close();
+    }
+}
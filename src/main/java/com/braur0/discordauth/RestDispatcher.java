@@ -0,0 +1,334 @@
+package com.braur0.discordauth;
+
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
+import net.dv8tion.jda.api.interactions.InteractionHook;
+import net.dv8tion.jda.api.requests.RestAction;
+import org.slf4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Queues Discord REST calls in front of JDA so a verification rush does not bury replies behind housekeeping.
+ * <p>
+ * Every call belongs to a route (a channel's messages, a guild's members or its role changes) and is handed to
+ * JDA only while fewer than {@code maxInFlight} calls of that route, and fewer than {@code maxInFlightTotal}
+ * calls of all routes together, are outstanding; the rest wait here, where they are taken in priority order
+ * instead of JDA's first-come order. Because the total budget is shared, a freed slot goes to the most
+ * important waiting call of any route, so a reply in one DM channel overtakes housekeeping on the role route.
+ * A route whose last call spent longer
+ * than {@code congestionMillis} in flight is treated as rate limited: housekeeping on it waits until the route
+ * is idle. When {@code maxQueued} calls are waiting, queued housekeeping is shed to make room for replies, and
+ * new housekeeping is shed outright.
+ * <p>
+ * Concurrent lookups of the same member share one request.
+ */
+public class RestDispatcher {
+
+    /**
+     * Order in which waiting calls are sent.
+     */
+    public enum Priority {
+        // Answers to !verify and /verify, which a player is waiting for in-game
+        VERIFY,
+        // Answers to admin commands
+        ADMIN,
+        // Role removals and similar work nobody is waiting for
+        HOUSEKEEPING
+    }
+
+    /**
+     * Kind of route, used to group queue depths and wait times in the metrics. The plugin serves one guild, so
+     * the member and role kinds are one route each; message routes are one per channel and only reported
+     * together, plus the depth of the deepest one.
+     */
+    public enum RouteKind { MESSAGE, MEMBER, ROLE }
+
+    private static final class Task {
+        final String route;
+        final RouteKind kind;
+        final Supplier<? extends RestAction<?>> action;
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        final long queuedAt = System.nanoTime();
+
+        Task(String route, RouteKind kind, Supplier<? extends RestAction<?>> action) {
+            this.route = route;
+            this.kind = kind;
+            this.action = action;
+        }
+    }
+
+    private static final class Route {
+        int inFlight;
+        int queued;
+        boolean congested;
+    }
+
+    private final int maxInFlight;
+    private final int maxInFlightTotal;
+    private final int maxQueued;
+    private final long congestionNanos;
+    private final Logger logger;
+
+    private final Map<Priority, ArrayDeque<Task>> queues = new EnumMap<>(Priority.class);
+    private final Map<String, Route> routes = new HashMap<>();
+    private final int[] queuedByKind = new int[RouteKind.values().length];
+    private int queued;
+    private int inFlight;
+    private long shedSinceReport;
+    private long lastShedReport;
+
+    // Member lookups in flight by guild and user
+    private final Map<String, CompletableFuture<Member>> memberLookups = new ConcurrentHashMap<>();
+
+    private final Metrics.Counter shed;
+    private final Metrics.Counter collapsedLookups;
+    private final Map<RouteKind, Metrics.Histogram> waitTimes = new EnumMap<>(RouteKind.class);
+    private final Map<RouteKind, Metrics.Histogram> queueTimes = new EnumMap<>(RouteKind.class);
+
+    public RestDispatcher(int maxInFlight, int maxInFlightTotal, int maxQueued, long congestionMillis, Logger logger,
+                          Metrics metrics) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxInFlightTotal = Math.max(1, maxInFlightTotal);
+        this.maxQueued = Math.max(1, maxQueued);
+        this.congestionNanos = TimeUnit.MILLISECONDS.toNanos(congestionMillis);
+        this.logger = logger;
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+        }
+
+        this.shed = metrics.counter("rest_shed_total", "REST calls dropped because the dispatcher queue was full.");
+        this.collapsedLookups = metrics.counter("rest_member_lookups_collapsed_total",
+                "Member lookups answered by a request already in flight for the same user.");
+        for (RouteKind kind : RouteKind.values()) {
+            String name = kind.name().toLowerCase(Locale.ROOT);
+            waitTimes.put(kind, metrics.histogram("rest_" + name + "_seconds",
+                    "Time from queueing a " + name + " REST call until Discord answered it."));
+            queueTimes.put(kind, metrics.histogram("rest_" + name + "_queue_seconds",
+                    "Time a " + name + " REST call waited in the dispatcher before it was sent."));
+            metrics.gauge("rest_" + name + "_queue_depth", "Waiting " + name + " REST calls.", () -> getQueued(kind));
+        }
+        metrics.gauge("rest_queue_depth", "REST calls waiting in the dispatcher.", this::getQueued);
+        metrics.gauge("rest_route_queue_depth_max", "REST calls waiting on the busiest single route.",
+                this::getDeepestRouteQueue);
+        metrics.gauge("rest_in_flight", "REST calls handed to JDA and not yet answered.", this::getInFlight);
+    }
+
+    /**
+     * Send a message to a channel.
+     */
+    public CompletableFuture<Object> reply(MessageChannel channel, String message, Priority priority) {
+        return submit("message:" + channel.getId(), RouteKind.MESSAGE, priority, () -> channel.sendMessage(message));
+    }
+
+    /**
+     * Answer a deferred interaction with a message only the user who triggered it can see.
+     */
+    public CompletableFuture<Object> followUp(InteractionHook hook, String message, Priority priority) {
+        return submit("interaction:" + hook.getInteraction().getId(), RouteKind.MESSAGE, priority,
+                () -> hook.sendMessage(message).setEphemeral(true));
+    }
+
+    /**
+     * Look up a guild member, sharing the request with any lookup of the same user that is still in flight.
+     *
+     * @param useCache whether JDA may answer from its member cache; only safe while the bot receives member events
+     */
+    public CompletableFuture<Member> retrieveMember(Guild guild, String userId, boolean useCache, Priority priority) {
+        String key = guild.getId() + ":" + userId;
+        CompletableFuture<Member> lookup = new CompletableFuture<>();
+        CompletableFuture<Member> inFlight = memberLookups.putIfAbsent(key, lookup);
+        if (inFlight != null) {
+            collapsedLookups.increment();
+            return inFlight;
+        }
+
+        submit("member:" + guild.getId(), RouteKind.MEMBER, priority, () -> guild.retrieveMemberById(userId).useCache(useCache))
+                .whenComplete((member, error) -> {
+                    memberLookups.remove(key, lookup);
+                    if (error != null) {
+                        lookup.completeExceptionally(error);
+                    } else {
+                        lookup.complete((Member) member);
+                    }
+                });
+        return lookup;
+    }
+
+    /**
+     * Queue a REST call. The action is created only when it is sent, so a shed call costs nothing.
+     *
+     * @return a future completed with the call's result, or failed with a {@link RejectedExecutionException}
+     *         if the call was shed
+     */
+    public CompletableFuture<Object> submit(String route, RouteKind kind, Priority priority,
+                                            Supplier<? extends RestAction<?>> action) {
+        Task task = new Task(route, kind, action);
+        Task dropped = null;
+        synchronized (this) {
+            if (queued >= maxQueued) {
+                // Drop the newest housekeeping call so a more important one fits
+                dropped = priority != Priority.HOUSEKEEPING ? queues.get(Priority.HOUSEKEEPING).pollLast() : null;
+                if (dropped == null) {
+                    dropped = task;
+                } else {
+                    dequeued(dropped);
+                    Route droppedRoute = routes.get(dropped.route);
+                    if (droppedRoute.inFlight == 0 && droppedRoute.queued == 0) {
+                        routes.remove(dropped.route);
+                    }
+                }
+                countShed();
+            }
+            if (dropped != task) {
+                queues.get(priority).add(task);
+                routes.computeIfAbsent(route, r -> new Route()).queued++;
+                queuedByKind[kind.ordinal()]++;
+                queued++;
+            }
+        }
+        if (dropped != null) {
+            dropped.result.completeExceptionally(new RejectedExecutionException("Discord REST queue is full"));
+        }
+        drain();
+        return task.result;
+    }
+
+    private void countShed() {
+        shed.increment();
+        shedSinceReport++;
+        long now = System.currentTimeMillis();
+        if (now - lastShedReport >= TimeUnit.MINUTES.toMillis(1)) {
+            logger.warn("Discord REST queue is full; dropped {} call(s) since the last report.", shedSinceReport);
+            shedSinceReport = 0;
+            lastShedReport = now;
+        }
+    }
+
+    // Take a waiting call off the counts; the caller removes it from its queue
+    private void dequeued(Task task) {
+        routes.get(task.route).queued--;
+        queuedByKind[task.kind.ordinal()]--;
+        queued--;
+    }
+
+    // Hand every waiting call whose route has room to JDA, most important first, until the total budget is spent
+    private void drain() {
+        ArrayDeque<Task> ready = new ArrayDeque<>();
+        synchronized (this) {
+            sending:
+            for (Priority priority : Priority.values()) {
+                Iterator<Task> waiting = queues.get(priority).iterator();
+                while (waiting.hasNext()) {
+                    if (inFlight >= maxInFlightTotal) {
+                        break sending;
+                    }
+                    Task task = waiting.next();
+                    Route route = routes.get(task.route);
+                    if (route.inFlight >= maxInFlight
+                            || (priority == Priority.HOUSEKEEPING && route.congested && route.inFlight > 0)) {
+                        continue;
+                    }
+                    waiting.remove();
+                    dequeued(task);
+                    route.inFlight++;
+                    inFlight++;
+                    ready.add(task);
+                }
+            }
+        }
+
+        for (Task task : ready) {
+            send(task);
+        }
+    }
+
+    private void send(Task task) {
+        long sentAt = System.nanoTime();
+        queueTimes.get(task.kind).record(sentAt - task.queuedAt);
+        try {
+            @SuppressWarnings("unchecked")
+            RestAction<Object> action = (RestAction<Object>) task.action.get();
+            action.queue(result -> {
+                finished(task, sentAt);
+                task.result.complete(result);
+            }, error -> {
+                finished(task, sentAt);
+                task.result.completeExceptionally(error);
+            });
+        } catch (RuntimeException e) {
+            finished(task, sentAt);
+            task.result.completeExceptionally(e);
+        }
+    }
+
+    private void finished(Task task, long sentAt) {
+        long now = System.nanoTime();
+        waitTimes.get(task.kind).record(now - task.queuedAt);
+        synchronized (this) {
+            Route route = routes.get(task.route);
+            route.inFlight--;
+            inFlight--;
+            // JDA holds a call back while its bucket is exhausted, so a slow answer means the route is rate limited
+            route.congested = now - sentAt > congestionNanos;
+            if (route.inFlight == 0 && route.queued == 0) {
+                routes.remove(task.route);
+            }
+        }
+        drain();
+    }
+
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    public synchronized int getQueued(RouteKind kind) {
+        return queuedByKind[kind.ordinal()];
+    }
+
+    /**
+     * Number of calls waiting on the route with the most waiting calls.
+     */
+    public synchronized int getDeepestRouteQueue() {
+        int deepest = 0;
+        for (Route route : routes.values()) {
+            deepest = Math.max(deepest, route.queued);
+        }
+        return deepest;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Fail every call that has not been sent yet. Called when the bot disconnects.
+     */
+    public void clear() {
+        ArrayDeque<Task> dropped = new ArrayDeque<>();
+        synchronized (this) {
+            for (ArrayDeque<Task> queue : queues.values()) {
+                for (Task task : queue) {
+                    dequeued(task);
+                    dropped.add(task);
+                }
+                queue.clear();
+            }
+            routes.values().removeIf(route -> route.inFlight == 0);
+        }
+        for (Task task : dropped) {
+            task.result.completeExceptionally(new RejectedExecutionException("Discord bot stopped"));
+        }
+    }
+}
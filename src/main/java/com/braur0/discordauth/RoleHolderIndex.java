@@ -0,0 +1,114 @@
+package com.braur0.discordauth;
+
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRemoveEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleAddEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleRemoveEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberUpdateEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import org.slf4j.Logger;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Set of Discord user IDs holding the required role, kept up to date from gateway events,
+ * so the role check on {@code !verify} is a set lookup instead of a REST call.
+ */
+public class RoleHolderIndex extends ListenerAdapter {
+
+    private final long guildId;
+    private final long roleId;
+    private final Logger logger;
+
+    private final Set<Long> holders = ConcurrentHashMap.newKeySet();
+    private volatile boolean loaded;
+
+    public RoleHolderIndex(long guildId, long roleId, Logger logger) {
+        this.guildId = guildId;
+        this.roleId = roleId;
+        this.logger = logger;
+    }
+
+    /**
+     * Request every role holder of the guild from the gateway and fill the set.
+     */
+    public void load(Guild guild) {
+        Role role = guild.getRoleById(roleId);
+        if (role == null) {
+            logger.warn("Role {} not found in guild {}; role checks will use REST lookups.", roleId, guildId);
+            return;
+        }
+
+        long start = System.nanoTime();
+        guild.findMembersWithRoles(role).onSuccess(members -> {
+            members.forEach(member -> holders.add(member.getIdLong()));
+            loaded = true;
+            logger.info("Indexed {} holders of role {} in {} ms ({} members in the JDA cache).",
+                    holders.size(), role.getName(), (System.nanoTime() - start) / 1_000_000,
+                    guild.getMemberCache().size());
+        }).onError(error -> logger.warn("Failed to load holders of role {}; role checks will use REST lookups.", roleId, error));
+    }
+
+    /**
+     * Whether the initial load has completed; until then the set is incomplete.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public boolean contains(long userId) {
+        return holders.contains(userId);
+    }
+
+    public int size() {
+        return holders.size();
+    }
+
+    @Override
+    public void onGuildMemberRoleAdd(GuildMemberRoleAddEvent event) {
+        if (event.getGuild().getIdLong() != guildId) return;
+        for (Role role : event.getRoles()) {
+            if (role.getIdLong() == roleId) {
+                holders.add(event.getMember().getIdLong());
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onGuildMemberRoleRemove(GuildMemberRoleRemoveEvent event) {
+        if (event.getGuild().getIdLong() != guildId) return;
+        for (Role role : event.getRoles()) {
+            if (role.getIdLong() == roleId) {
+                holders.remove(event.getMember().getIdLong());
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onGuildMemberUpdate(GuildMemberUpdateEvent event) {
+        // Also fired for members that were not cached, which do not get role add/remove events
+        if (event.getGuild().getIdLong() != guildId) return;
+        update(event.getMember());
+    }
+
+    @Override
+    public void onGuildMemberRemove(GuildMemberRemoveEvent event) {
+        if (event.getGuild().getIdLong() != guildId) return;
+        holders.remove(event.getUser().getIdLong());
+    }
+
+    private void update(Member member) {
+        for (Role role : member.getRoles()) {
+            if (role.getIdLong() == roleId) {
+                holders.add(member.getIdLong());
+                return;
+            }
+        }
+        holders.remove(member.getIdLong());
+    }
+}
@@ -0,0 +1,39 @@
+package com.braur0.discordauth;
+
+import java.util.UUID;
+
+/**
+ * {@link VerificationCodes} that are unique across every proxy of a cluster.
+ * <p>
+ * Each code is also reserved as a key in the cluster backend with {@code SET NX}, so the leader's bot can
+ * resolve codes issued on any proxy. The key expires on its own if a proxy dies before releasing it.
+ */
+public class SharedVerificationCodes extends VerificationCodes {
+
+    private final ClusterBackend backend;
+    private final String keyPrefix;
+    private final long ttlMillis;
+
+    public SharedVerificationCodes(String alphabet, int length, ClusterBackend backend, String keyPrefix, long ttlMillis) {
+        super(alphabet, length);
+        this.backend = backend;
+        this.keyPrefix = keyPrefix + ":code:";
+        this.ttlMillis = ttlMillis;
+    }
+
+    @Override
+    protected boolean reserve(String code, UUID playerId) {
+        return backend.setIfAbsent(keyPrefix + code, playerId.toString(), ttlMillis);
+    }
+
+    @Override
+    protected void unreserve(String code, UUID playerId) {
+        backend.compareAndDelete(keyPrefix + code, playerId.toString());
+    }
+
+    @Override
+    protected UUID lookupShared(String code) {
+        String playerId = backend.get(keyPrefix + code);
+        return playerId != null ? UUID.fromString(playerId) : null;
+    }
+}
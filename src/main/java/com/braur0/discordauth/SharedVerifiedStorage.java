@@ -0,0 +1,153 @@
+package com.braur0.discordauth;
+
+import org.slf4j.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * {@link VerifiedStorage} in a {@link ClusterBackend}, shared by every proxy of a cluster.
+ * <p>
+ * Links are kept in two hashes, UUID to Discord ID and back. Lookups go through a per-proxy {@link NearCache} that
+ * also remembers unverified players; every change publishes the affected UUID (or {@code *} for bulk changes) so
+ * all proxies drop their cached copy.
+ */
+public class SharedVerifiedStorage implements VerifiedStorage {
+
+    private final ClusterBackend backend;
+    private final Logger logger;
+    private final String linksHash;
+    private final String discordHash;
+    private final String invalidationChannel;
+
+    private final NearCache cache;
+
+    public SharedVerifiedStorage(ClusterBackend backend, String keyPrefix, Logger logger, NearCache cache) {
+        this.backend = backend;
+        this.logger = logger;
+        this.linksHash = keyPrefix + ":links";
+        this.discordHash = keyPrefix + ":discord";
+        this.invalidationChannel = keyPrefix + ":links";
+        this.cache = cache;
+        backend.subscribe(invalidationChannel, this::invalidate, cache::clear);
+    }
+
+    private void invalidate(String message) {
+        if (message.equals("*")) {
+            cache.clear();
+        } else {
+            cache.invalidate(UUID.fromString(message));
+        }
+    }
+
+    @Override
+    public boolean isVerified(UUID uuid) {
+        return getDiscordId(uuid) != null;
+    }
+
+    /**
+     * Add a verified player. The link is stored in the backend before the returned future completes.
+     */
+    @Override
+    public CompletableFuture<Void> add(UUID uuid, String discordId) {
+        try {
+            String previous = backend.hget(linksHash, uuid.toString());
+            backend.hset(linksHash, Map.of(uuid.toString(), discordId));
+            backend.hset(discordHash, Map.of(discordId, uuid.toString()));
+            if (previous != null && !previous.equals(discordId)) {
+                backend.hremove(discordHash, previous);
+            }
+            cache.put(uuid, discordId);
+            backend.publish(invalidationChannel, uuid.toString());
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            cache.invalidate(uuid);
+            logger.error("Failed to store verification of player {}", uuid, e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Add many verified players with one write per hash.
+     */
+    @Override
+    public CompletableFuture<Void> addAll(Map<UUID, String> links) {
+        try {
+            Map<String, String> forward = new HashMap<>(links.size() * 2);
+            Map<String, String> reverse = new HashMap<>(links.size() * 2);
+            links.forEach((uuid, discordId) -> {
+                forward.put(uuid.toString(), discordId);
+                reverse.put(discordId, uuid.toString());
+            });
+            backend.hset(linksHash, forward);
+            backend.hset(discordHash, reverse);
+            cache.clear();
+            backend.publish(invalidationChannel, "*");
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            cache.clear();
+            logger.error("Failed to store {} verified players", links.size(), e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Remove a verified player. The link is deleted from the backend before the returned future completes.
+     */
+    @Override
+    public CompletableFuture<Void> remove(UUID uuid) {
+        cache.invalidate(uuid);
+        try {
+            String discordId = backend.hremove(linksHash, uuid.toString());
+            if (discordId != null) {
+                backend.hremove(discordHash, discordId);
+            }
+            cache.put(uuid, null);
+            backend.publish(invalidationChannel, uuid.toString());
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            logger.error("Failed to remove verification of player {}", uuid, e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public String getDiscordId(UUID uuid) {
+        try {
+            return cache.get(uuid, id -> backend.hget(linksHash, id.toString()));
+        } catch (RuntimeException e) {
+            logger.error("Failed to look up verification of player {}", uuid, e);
+            return null;
+        }
+    }
+
+    @Override
+    public UUID getPlayerIdByDiscordId(String discordId) {
+        try {
+            String uuid = backend.hget(discordHash, discordId);
+            return uuid != null ? UUID.fromString(uuid) : null;
+        } catch (RuntimeException e) {
+            logger.error("Failed to look up player for Discord ID {}", discordId, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<UUID, String> consumer) {
+        backend.hscan(linksHash, (uuid, discordId) -> consumer.accept(UUID.fromString(uuid), discordId));
+    }
+
+    @Override
+    public CompletableFuture<Void> flush() {
+        // Every write reaches the backend before its future completes
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void close() {
+        // The backend is shared with the rest of the cluster state and closed by the plugin
+    }
+}
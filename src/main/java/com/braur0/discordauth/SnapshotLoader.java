@@ -0,0 +1,204 @@
+package com.braur0.discordauth;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * Loads the {@code verified.json} snapshot straight into a {@link LinkIndex}.
+ * <p>
+ * Small files are read with a token-based {@link JsonReader}. Large files are memory-mapped,
+ * split at entry boundaries and parsed on all cores without creating any strings; if the file
+ * is not in the flat {@code {"uuid":"snowflake",...}} shape written by the plugin, it falls back
+ * to the streaming reader.
+ */
+public final class SnapshotLoader {
+
+    // Rough size of one {"uuid":"snowflake"} entry, used to presize the index
+    private static final int BYTES_PER_ENTRY = 60;
+    private static final int UUID_LENGTH = 36;
+
+    private SnapshotLoader() {
+    }
+
+    /**
+     * Load every link of the snapshot into the index.
+     *
+     * @return the number of entries read
+     */
+    public static int load(Path file, LinkIndex index, long parallelThresholdBytes) throws IOException {
+        long size = Files.size(file);
+        index.reserve((int) Math.min(Integer.MAX_VALUE / 3, size / BYTES_PER_ENTRY));
+
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        if (size >= parallelThresholdBytes && size < Integer.MAX_VALUE && parallelism > 1) {
+            try {
+                return loadParallel(file, index, parallelism);
+            } catch (IllegalArgumentException e) {
+                // Not the compact layout we write ourselves; the generic reader can handle it
+                index.clear();
+            }
+        }
+        return loadStreaming(file, index);
+    }
+
+    private static int loadStreaming(Path file, LinkIndex index) throws IOException {
+        int count = 0;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             JsonReader json = new JsonReader(reader)) {
+            json.beginObject();
+            while (json.hasNext()) {
+                UUID uuid = UUID.fromString(json.nextName());
+                index.put(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), Long.parseLong(json.nextString()));
+                count++;
+            }
+            json.endObject();
+        }
+        return count;
+    }
+
+    private static int loadParallel(Path file, LinkIndex index, int parallelism) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        // Split at commas: keys and values are UUIDs and digits, so a comma always separates two entries
+        int limit = buffer.limit();
+        int[] bounds = new int[parallelism + 1];
+        bounds[parallelism] = limit;
+        for (int i = 1; i < parallelism; i++) {
+            int position = Math.max(bounds[i - 1], (int) ((long) limit * i / parallelism));
+            while (position < limit && buffer.get(position) != ',') {
+                position++;
+            }
+            bounds[i] = position;
+        }
+
+        List<long[]> chunks = IntStream.range(0, parallelism).parallel()
+                .mapToObj(i -> parseChunk(buffer, bounds[i], bounds[i + 1]))
+                .toList();
+
+        // Insert in file order so later duplicates win, exactly like the streaming reader
+        int count = 0;
+        for (long[] links : chunks) {
+            int length = (int) links[0];
+            index.putAll(links, 1, length);
+            count += length / 3;
+        }
+        return count;
+    }
+
+    /**
+     * Parse the entries in {@code [from, to)} into {@code [length, msb, lsb, snowflake, ...]}.
+     *
+     * @throws IllegalArgumentException if the bytes are not in the expected layout
+     */
+    private static long[] parseChunk(MappedByteBuffer buffer, int from, int to) {
+        long[] links = new long[1 + Math.max(3, (to - from) / BYTES_PER_ENTRY * 3)];
+        int length = 0;
+        int position = from;
+        while (true) {
+            position = skip(buffer, position, to);
+            if (position >= to) break;
+
+            expect(buffer, position, '"');
+            if (position + UUID_LENGTH + 1 >= to) {
+                throw new IllegalArgumentException("Truncated entry at " + position);
+            }
+            long msb = parseHex(buffer, position + 1, 8) << 32
+                    | parseHex(buffer, position + 10, 4) << 16
+                    | parseHex(buffer, position + 15, 4);
+            long lsb = parseHex(buffer, position + 20, 4) << 48
+                    | parseHex(buffer, position + 25, 12);
+            expect(buffer, position + 9, '-');
+            expect(buffer, position + 14, '-');
+            expect(buffer, position + 19, '-');
+            expect(buffer, position + 24, '-');
+            position += UUID_LENGTH + 1;
+            expect(buffer, position++, '"');
+
+            position = skipWhitespace(buffer, position, to);
+            expect(buffer, position++, ':');
+            position = skipWhitespace(buffer, position, to);
+            expect(buffer, position++, '"');
+            long snowflake = 0;
+            int digits = 0;
+            while (position < to && buffer.get(position) != '"') {
+                int digit = buffer.get(position++) - '0';
+                if (digit < 0 || digit > 9 || ++digits > 19) {
+                    throw new IllegalArgumentException("Invalid snowflake at " + position);
+                }
+                snowflake = snowflake * 10 + digit;
+            }
+            expect(buffer, position++, '"');
+            if (digits == 0) {
+                throw new IllegalArgumentException("Empty snowflake at " + position);
+            }
+
+            if (length + 4 > links.length) {
+                links = Arrays.copyOf(links, links.length * 2);
+            }
+            links[1 + length++] = msb;
+            links[1 + length++] = lsb;
+            links[1 + length++] = snowflake;
+        }
+        links[0] = length;
+        return links;
+    }
+
+    // Skip whitespace and the structural characters between entries
+    private static int skip(MappedByteBuffer buffer, int position, int to) {
+        while (position < to) {
+            byte b = buffer.get(position);
+            if (b != '{' && b != '}' && b != ',' && b != ' ' && b != '\n' && b != '\r' && b != '\t') break;
+            position++;
+        }
+        return position;
+    }
+
+    private static int skipWhitespace(MappedByteBuffer buffer, int position, int to) {
+        while (position < to) {
+            byte b = buffer.get(position);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') break;
+            position++;
+        }
+        return position;
+    }
+
+    private static void expect(MappedByteBuffer buffer, int position, char expected) {
+        if (position >= buffer.limit() || buffer.get(position) != expected) {
+            throw new IllegalArgumentException("Expected '" + expected + "' at " + position);
+        }
+    }
+
+    private static long parseHex(MappedByteBuffer buffer, int position, int digits) {
+        long value = 0;
+        for (int i = 0; i < digits; i++) {
+            int c = buffer.get(position + i);
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else if (c >= 'A' && c <= 'F') {
+                digit = c - 'A' + 10;
+            } else {
+                throw new IllegalArgumentException("Invalid UUID at " + position);
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,28 @@
+package com.braur0.discordauth;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long each startup phase took, in the order the phases finished.
+ */
+public class StartupTimings {
+
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    /**
+     * Record a phase that started at {@code startNanos} (from {@link System#nanoTime()}) and ends now.
+     */
+    public synchronized void record(String phase, long startNanos) {
+        phases.put(phase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringJoiner joiner = new StringJoiner(", ");
+        phases.forEach((phase, millis) -> joiner.add(phase + " " + millis + " ms"));
+        return joiner.toString();
+    }
+}
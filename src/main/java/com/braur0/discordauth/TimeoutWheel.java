@@ -0,0 +1,196 @@
+package com.braur0.discordauth;
+
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hierarchical timing wheel that runs keyed timeouts on a single thread.
+ * <p>
+ * Scheduling and cancelling are O(1): each timeout is a node in a doubly-linked bucket list and is
+ * found by its key. Four levels of 64 slots cover about 19 days at a 100 ms tick; timeouts further
+ * out wait in the top level and are re-placed as the wheel turns.
+ */
+public class TimeoutWheel {
+
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    private static final class Timeout {
+        final Object key;
+        final long deadline;
+        final Runnable task;
+        Timeout prev;
+        Timeout next;
+        int level;
+        int slot;
+
+        Timeout(Object key, long deadline, Runnable task) {
+            this.key = key;
+            this.deadline = deadline;
+            this.task = task;
+        }
+    }
+
+    private final Logger logger;
+    private final long tickNanos;
+    // Tick n is processed at startNanos + n * tickNanos
+    private final long startNanos;
+    private final Timeout[][] buckets = new Timeout[LEVELS][SLOTS];
+    private final Map<Object, Timeout> byKey = new HashMap<>();
+    private final Thread thread;
+
+    // Last tick that has been processed
+    private long currentTick;
+    private volatile boolean running = true;
+
+    public TimeoutWheel(long tick, TimeUnit unit, Logger logger) {
+        this.logger = logger;
+        this.tickNanos = unit.toNanos(tick);
+        this.startNanos = System.nanoTime();
+        this.thread = new Thread(this::run, "DiscordAuth-TimeoutWheel");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Run the task once the delay has passed, replacing any timeout already scheduled for the key.
+     */
+    public synchronized void schedule(Object key, long delay, TimeUnit unit, Runnable task) {
+        Timeout existing = byKey.remove(key);
+        if (existing != null) {
+            unlink(existing);
+        }
+
+        // Round up from the current time so a timeout never fires early
+        long elapsed = System.nanoTime() - startNanos + unit.toNanos(delay);
+        long deadline = Math.max(currentTick + 1, (elapsed + tickNanos - 1) / tickNanos);
+        Timeout timeout = new Timeout(key, deadline, task);
+        byKey.put(key, timeout);
+        place(timeout);
+    }
+
+    /**
+     * Cancel the timeout scheduled for the key.
+     *
+     * @return true if a timeout was pending
+     */
+    public synchronized boolean cancel(Object key) {
+        Timeout timeout = byKey.remove(key);
+        if (timeout == null) {
+            return false;
+        }
+        unlink(timeout);
+        return true;
+    }
+
+    /**
+     * Number of pending timeouts.
+     */
+    public synchronized int size() {
+        return byKey.size();
+    }
+
+    public void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    private void place(Timeout timeout) {
+        long delta = timeout.deadline - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) ((timeout.deadline >>> (SLOT_BITS * level)) & SLOT_MASK);
+
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = buckets[level][slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        buckets[level][slot] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.level][timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    /**
+     * Advance the wheel by one tick and collect the timeouts that are due.
+     */
+    private synchronized void advance(List<Runnable> due) {
+        long tick = ++currentTick;
+
+        // Move timeouts from coarser levels down as their range comes up, highest level first
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((tick & ((1L << (SLOT_BITS * level)) - 1)) != 0) continue;
+            int slot = (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+            Timeout timeout = buckets[level][slot];
+            buckets[level][slot] = null;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.deadline <= tick) {
+                    byKey.remove(timeout.key);
+                    due.add(timeout.task);
+                } else {
+                    place(timeout);
+                }
+                timeout = next;
+            }
+        }
+
+        int slot = (int) (tick & SLOT_MASK);
+        Timeout timeout = buckets[0][slot];
+        buckets[0][slot] = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            byKey.remove(timeout.key);
+            due.add(timeout.task);
+            timeout = next;
+        }
+    }
+
+    private void run() {
+        List<Runnable> due = new ArrayList<>();
+        long nextTick = startNanos + tickNanos;
+        while (running) {
+            long wait = nextTick - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+
+            advance(due);
+            nextTick += tickNanos;
+
+            // Run outside the lock so tasks can schedule or cancel other timeouts
+            for (Runnable task : due) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error("Timeout task failed", e);
+                }
+            }
+            due.clear();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.braur0.discordauth;
+
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out verification codes that are unique among all pending codes.
+ * <p>
+ * A code is drawn from a per-thread {@link SecureRandom} straight into a {@code char[]} and reserved with
+ * {@code putIfAbsent}, so two players can never hold the same code and no lock is taken. Codes go back to the
+ * pool as soon as they are used, expire or the player leaves.
+ * <p>
+ * Subclasses can additionally reserve codes in shared storage, see {@link SharedVerificationCodes}.
+ */
+public class VerificationCodes {
+
+    // Give up instead of spinning when the code space is nearly exhausted
+    private static final int MAX_DRAWS = 64;
+
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+
+    private final char[] alphabet;
+    private final int length;
+    // Alphabets without lower-case letters accept codes typed in any case
+    private final boolean upperCaseOnly;
+
+    private final Map<UUID, String> byPlayer = new ConcurrentHashMap<>();
+    private final Map<String, UUID> byCode = new ConcurrentHashMap<>();
+
+    public VerificationCodes(String alphabet, int length) {
+        this.alphabet = alphabet.toCharArray();
+        this.length = length;
+        this.upperCaseOnly = alphabet.equals(alphabet.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Reserve a new code for the player, releasing the one it held before.
+     *
+     * @return the code, or null if no free code was found
+     */
+    public String allocate(UUID playerId) {
+        SecureRandom random = RANDOM.get();
+        char[] chars = new char[length];
+        for (int draw = 0; draw < MAX_DRAWS; draw++) {
+            for (int i = 0; i < length; i++) {
+                chars[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            String code = new String(chars);
+            if (byCode.putIfAbsent(code, playerId) == null) {
+                if (!reserve(code, playerId)) {
+                    byCode.remove(code, playerId);
+                    continue;
+                }
+                String previous = byPlayer.put(playerId, code);
+                if (previous != null && byCode.remove(previous, playerId)) {
+                    unreserve(previous, playerId);
+                }
+                return code;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the player holding the code, or null if it is not pending.
+     */
+    public UUID lookup(String code) {
+        String normalized = upperCaseOnly ? code.toUpperCase(Locale.ROOT) : code;
+        UUID playerId = byCode.get(normalized);
+        return playerId != null ? playerId : lookupShared(normalized);
+    }
+
+    /**
+     * Release the player's pending code, if any.
+     */
+    public void release(UUID playerId) {
+        String code = byPlayer.remove(playerId);
+        if (code != null) {
+            byCode.remove(code, playerId);
+            unreserve(code, playerId);
+        }
+    }
+
+    /**
+     * Release a code that was just used, if it still belongs to the player. Unlike {@link #release(UUID)}
+     * this also works on a proxy other than the one that issued the code.
+     */
+    public void consume(String code, UUID playerId) {
+        String normalized = upperCaseOnly ? code.toUpperCase(Locale.ROOT) : code;
+        byPlayer.remove(playerId, normalized);
+        byCode.remove(normalized, playerId);
+        unreserve(normalized, playerId);
+    }
+
+    /**
+     * Reserve a code that is free locally in shared storage.
+     *
+     * @return false if another proxy holds the code
+     */
+    protected boolean reserve(String code, UUID playerId) {
+        return true;
+    }
+
+    /**
+     * Release a shared reservation made by {@link #reserve(String, UUID)}.
+     */
+    protected void unreserve(String code, UUID playerId) {
+    }
+
+    /**
+     * Look up a code issued by another proxy.
+     */
+    protected UUID lookupShared(String code) {
+        return null;
+    }
+
+    /**
+     * Number of pending codes.
+     */
+    public int size() {
+        return byPlayer.size();
+    }
+
+    /**
+     * Number of distinct codes, saturated at {@code Long.MAX_VALUE}.
+     */
+    public long space() {
+        long space = 1;
+        for (int i = 0; i < length; i++) {
+            if (space > Long.MAX_VALUE / alphabet.length) {
+                return Long.MAX_VALUE;
+            }
+            space *= alphabet.length;
+        }
+        return space;
+    }
+}
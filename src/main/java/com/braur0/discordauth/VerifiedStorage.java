@@ -1,113 +1,64 @@
 package com.braur0.discordauth;
 
-import org.slf4j.Logger;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-
-import java.io.IOException;
-import java.lang.reflect.Type;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 /**
- * Storage class to manage verified Minecraft players linked with Discord accounts.
+ * Storage of verified Minecraft players linked with Discord accounts.
+ * <p>
+ * The implementation is selected with the {@code storage.type} config key.
  */
-public class VerifiedStorage {
-
-    private final Path file;
-    private final Gson gson = new Gson();
-    private final Logger logger;
-
-    // Map to store verified players: UUID -> Discord ID
-    private final Map<UUID, String> verifiedMap = new ConcurrentHashMap<>();
-    private final Map<String, UUID> discordIdToUuidMap = new ConcurrentHashMap<>();
-
-    public VerifiedStorage(Path file, Logger logger) {
-        this.logger = logger;
-        this.file = file;
-        load();
-    }
+public interface VerifiedStorage {
 
     /**
-     * Load verified players from JSON file.
+     * Check if a player is verified.
      */
-    private void load() {
-        try {
-            if (Files.exists(file)) {
-                String json = Files.readString(file);
-                Type type = new TypeToken<Map<String, String>>() {}.getType();
-                Map<String, String> loaded = gson.fromJson(json, type);
+    boolean isVerified(UUID uuid);
 
-                Map<UUID, String> tempMap = new ConcurrentHashMap<>();
-                loaded.forEach((k, v) -> tempMap.put(UUID.fromString(k), v));
+    /**
+     * Link a player to a Discord account.
+     * The returned future completes once the change is persisted.
+     */
+    CompletableFuture<Void> add(UUID uuid, String discordId);
 
-                verifiedMap.clear();
-                verifiedMap.putAll(tempMap);
-                // Populate the reverse map
-                discordIdToUuidMap.clear();
-                verifiedMap.forEach((uuid, discordId) -> discordIdToUuidMap.put(discordId, uuid));
-            }
-        } catch (IOException e) {
-            logger.error("Failed to load verified players from {}", file, e);
-        }
-    }
+    /**
+     * Link many players at once with a single persist.
+     * The returned future completes once every link is persisted.
+     */
+    CompletableFuture<Void> addAll(Map<UUID, String> links);
 
     /**
-     * Save the current verified players to the JSON file.
+     * Remove the link of a player.
+     * The returned future completes once the change is persisted.
      */
-    public void save() {
-        try {
-            Map<String, String> toSave = new HashMap<>();
-            verifiedMap.forEach((k, v) -> toSave.put(k.toString(), v));
-            Files.writeString(file, gson.toJson(toSave));
-        } catch (IOException e) {
-            logger.error("Failed to save verified players to {}", file, e);
-        }
-    }
+    CompletableFuture<Void> remove(UUID uuid);
 
     /**
-     * Add a verified player and save the storage.
+     * Get the Discord ID linked to a player.
+     * Returns null if not found.
      */
-    public void add(UUID uuid, String discordId) {
-        verifiedMap.put(uuid, discordId);
-        discordIdToUuidMap.put(discordId, uuid);
-        save();
-    }
+    String getDiscordId(UUID uuid);
 
     /**
-     * Check if a player is verified.
+     * Get the Minecraft player UUID by Discord ID.
+     * Returns null if not found.
      */
-    public boolean isVerified(UUID uuid) {
-        return verifiedMap.containsKey(uuid);
-    }
+    UUID getPlayerIdByDiscordId(String discordId);
 
     /**
-     * Remove a verified player and save the storage.
+     * Stream every link to the consumer without building a copy of the whole dataset.
      */
-    public void remove(UUID uuid) {
-        String discordId = verifiedMap.remove(uuid);
-        if (discordId != null) {
-            discordIdToUuidMap.remove(discordId);
-        }
-        save();
-    }
+    void forEach(BiConsumer<UUID, String> consumer);
 
     /**
-     * Get the Discord ID linked to a player.
+     * Returns a future that completes once every change made before this call is persisted.
      */
-    public String getDiscordId(UUID uuid) {
-        return verifiedMap.get(uuid);
-    }
+    CompletableFuture<Void> flush();
 
     /**
-     * Get the Minecraft player UUID by Discord ID.
-     * Returns null if not found.
+     * Persist outstanding changes and release the underlying resources.
      */
-    public UUID getPlayerIdByDiscordId(String discordId) {
-        return discordIdToUuidMap.get(discordId);
-    }
+    void close();
 }